@@ -0,0 +1,25 @@
+package bench;
+
+/**
+ * One measured workload. The runner calls run() over and over, first to warm up the JIT and then while it measures,
+ * and divides the time and the allocated bytes by the operations run() reports.
+ */
+public interface Benchmark {
+
+    // Name of the result, compared against the baseline, so it must stay the same between runs.
+    String name();
+
+    /**
+     * This method runs the workload once.
+     *
+     * @return The number of operations that were done, for example states generated or levels solved.
+     */
+    long run();
+
+    /**
+     * @return The number of search nodes expanded since the last call, 0 for workloads that do not search.
+     */
+    default long takeNodes() {
+        return 0;
+    }
+}
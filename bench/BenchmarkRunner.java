@@ -0,0 +1,214 @@
+package bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the solver benchmarks and writes the results as JSON, optionally compared against the results of an earlier
+ * run.
+ *
+ * Every benchmark is warmed up first and then measured in a number of fixed-length iterations. An iteration calls the
+ * benchmark until its time is up and records the operations, the expanded nodes, and the bytes the thread allocated,
+ * read from the ThreadMXBean of the JVM. The score is the mean of the operations per second over the iterations,
+ * with the standard deviation as its error.
+ *
+ * Usage: BenchmarkRunner [--corpus dir] [--warmup n] [--iterations n] [--time ms] [--filter regex]
+ *                        [--output file] [--baseline file] [--threshold percent]
+ * Run it on a quiet machine, with the same JVM and flags as the baseline.
+ */
+public class BenchmarkRunner {
+
+    private static final Pattern RESULT = Pattern.compile(
+            "\\{\"benchmark\":\"([^\"]+)\",\"opsPerSec\":([0-9.Ee+-]+)");
+
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationMillis = 1000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Mean and error of one benchmark.
+     */
+    static class Result {
+
+        final String benchmark;
+        final double opsPerSec;
+        final double error;
+        final double bytesPerOp;
+        final double nodesPerSec;
+
+        Result(String benchmark, double opsPerSec, double error, double bytesPerOp, double nodesPerSec) {
+            this.benchmark = benchmark;
+            this.opsPerSec = opsPerSec;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+            this.nodesPerSec = nodesPerSec;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"benchmark\":\"%s\",\"opsPerSec\":%.3f,\"error\":%.3f,\"bytesPerOp\":%.1f,\"nodesPerSec\":%.1f}",
+                    benchmark, opsPerSec, error, bytesPerOp, nodesPerSec);
+        }
+    }
+
+    /**
+     * This method warms up and measures one benchmark.
+     *
+     * @param benchmark - Benchmark to measure
+     * @return The result of the measured iterations.
+     */
+    Result measure(Benchmark benchmark) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(benchmark);
+        }
+        benchmark.takeNodes();
+
+        double[] scores = new double[iterations];
+        long operations = 0;
+        long bytes = 0;
+        long nodes = 0;
+        long nanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] iteration = iterate(benchmark);
+            scores[i] = iteration[0] * 1e9 / iteration[1];
+            operations += iteration[0];
+            nanos += iteration[1];
+            bytes += iteration[2];
+            nodes += benchmark.takeNodes();
+        }
+
+        double mean = 0;
+        for (double score : scores) {
+            mean += score / iterations;
+        }
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+        }
+        return new Result(benchmark.name(), mean, Math.sqrt(variance), (double) bytes / Math.max(1, operations),
+                nodes * 1e9 / nanos);
+    }
+
+    // Operations, nanoseconds and allocated bytes of one iteration.
+    private long[] iterate(Benchmark benchmark) {
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long end = start + iterationMillis * 1000000;
+        long operations = 0;
+        long now;
+        do {
+            operations += benchmark.run();
+            now = System.nanoTime();
+        } while (now < end);
+        return new long[]{operations, now - start, threads.getThreadAllocatedBytes(thread) - allocated};
+    }
+
+    static String toJson(List<Result> results) {
+        StringBuilder s = new StringBuilder();
+        s.append("{\"jvm\":\"").append(System.getProperty("java.vm.name")).append(' ')
+                .append(System.getProperty("java.version")).append("\",\"results\":[\n");
+        for (int i = 0; i < results.size(); i++) {
+            s.append("  ").append(results.get(i).toJson()).append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        return s.append("]}\n").toString();
+    }
+
+    // Reads the scores of a file written by toJson(), by benchmark name.
+    static Map<String, Double> readScores(Path file) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Matcher matcher = RESULT.matcher(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            scores.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        }
+        return scores;
+    }
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        Path corpusDirectory = Paths.get("bench", "levels");
+        Path output = Paths.get("bench-results.json");
+        Path baseline = null;
+        double threshold = 10;
+        String filter = ".*";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--corpus":
+                    corpusDirectory = Paths.get(args[++i]);
+                    break;
+                case "--warmup":
+                    runner.warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    runner.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    runner.iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--output":
+                    output = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (runner.iterations < 1) {
+            throw new IllegalArgumentException("At least one measured iteration is needed");
+        }
+
+        Corpus corpus = new Corpus(corpusDirectory);
+        Map<String, Double> baselineScores = baseline == null ? new LinkedHashMap<>() : readScores(baseline);
+        List<Result> results = new ArrayList<>();
+        boolean regressed = false;
+        for (Benchmark benchmark : SolverBenchmarks.all(corpus)) {
+            if (!benchmark.name().matches(filter)) {
+                continue;
+            }
+            Result result = runner.measure(benchmark);
+            results.add(result);
+
+            String line = String.format(Locale.ROOT, "%-20s %14.1f ops/s +- %6.1f%% %12.1f B/op", result.benchmark,
+                    result.opsPerSec, 100 * result.error / result.opsPerSec, result.bytesPerOp);
+            if (result.nodesPerSec > 0) {
+                line += String.format(Locale.ROOT, " %12.0f nodes/s", result.nodesPerSec);
+            }
+            Double before = baselineScores.get(result.benchmark);
+            if (before != null) {
+                double change = 100 * (result.opsPerSec - before) / before;
+                boolean regression = change < -threshold;
+                regressed |= regression;
+                line += String.format(Locale.ROOT, "  %+6.1f%% vs baseline%s", change, regression ? "  REGRESSION" : "");
+            }
+            System.out.println(line);
+        }
+
+        Files.write(output, toJson(results).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + output);
+        if (regressed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import solver.ClosedSet;
+import solver.Level;
+import solver.LevelReader;
+import solver.Puzzle;
+import solver.SokobanState;
+import solver.SolverConfig;
+import solver.SuccessorGenerator;
+
+/**
+ * The fixed levels the benchmarks run on, read from small.sok, medium.sok and hard.sok of the corpus directory.
+ *
+ * The micro benchmarks need states from the middle of a search rather than initial states, so every level is also
+ * expanded breadth-first up to a fixed number of states. The expansion has no randomness, so every run measures the
+ * same states.
+ */
+public class Corpus {
+
+    public static final String[] TIERS = {"small", "medium", "hard"};
+
+    // States sampled from every level for the micro benchmarks.
+    private static final int SAMPLE_SIZE = 2000;
+
+    private final List<List<Puzzle>> tiers = new ArrayList<>();
+    private final List<Sample> samples = new ArrayList<>();
+
+    /**
+     * A level with a generator and a set of states of it.
+     */
+    public static class Sample {
+
+        private final Puzzle puzzle;
+        private final SuccessorGenerator generator;
+        private final List<SokobanState> states;
+
+        Sample(Puzzle puzzle, SuccessorGenerator generator, List<SokobanState> states) {
+            this.puzzle = puzzle;
+            this.generator = generator;
+            this.states = states;
+        }
+
+        public Puzzle getPuzzle() {
+            return puzzle;
+        }
+
+        public SuccessorGenerator getGenerator() {
+            return generator;
+        }
+
+        public List<SokobanState> getStates() {
+            return states;
+        }
+    }
+
+    public Corpus(Path directory) throws IOException {
+        for (String tier : TIERS) {
+            List<Puzzle> puzzles = new ArrayList<>();
+            try (LevelReader reader = LevelReader.open(directory.resolve(tier + ".sok"))) {
+                reader.forEachRemaining(puzzles::add);
+            }
+            tiers.add(Collections.unmodifiableList(puzzles));
+            for (Puzzle puzzle : puzzles) {
+                samples.add(sample(puzzle));
+            }
+        }
+    }
+
+    public List<Puzzle> getTier(int tier) {
+        return tiers.get(tier);
+    }
+
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    private static Sample sample(Puzzle puzzle) {
+        Level level = new Level(puzzle.getWidth(), puzzle.getHeight(), puzzle.getMapData());
+        SuccessorGenerator generator = new SuccessorGenerator(level, SolverConfig.greedy(true));
+        List<SokobanState> states = new ArrayList<>();
+        SokobanState initialState = generator.initialState(puzzle.getItemsData());
+        if (initialState == null) {
+            return new Sample(puzzle, generator, states);
+        }
+
+        ClosedSet seen = new ClosedSet();
+        seen.add(initialState);
+        states.add(initialState);
+        for (int i = 0; i < states.size() && states.size() < SAMPLE_SIZE; i++) {
+            for (SokobanState state : generator.generate(states.get(i), seen)) {
+                if (states.size() < SAMPLE_SIZE && seen.add(state)) {
+                    states.add(state);
+                }
+            }
+        }
+        return new Sample(puzzle, generator, Collections.unmodifiableList(states));
+    }
+}
@@ -0,0 +1,232 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.ClosedSet;
+import solver.Heuristic;
+import solver.Level;
+import solver.OpenList;
+import solver.Puzzle;
+import solver.SokoBot;
+import solver.SokobanState;
+import solver.SolverConfig;
+
+/**
+ * The benchmarks of the solver: micro benchmarks of the hot paths on the sampled states of the corpus, and solving
+ * every tier of the corpus end to end.
+ */
+public final class SolverBenchmarks {
+
+    // Results are added up here, so the JIT cannot drop the work as unused.
+    static long sink;
+
+    private SolverBenchmarks() {
+    }
+
+    public static List<Benchmark> all(Corpus corpus) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(new Successors(corpus));
+        benchmarks.add(new Duplicates(corpus));
+        benchmarks.add(new Estimates(corpus));
+        benchmarks.add(new Queue(corpus));
+        for (int tier = 0; tier < Corpus.TIERS.length; tier++) {
+            benchmarks.add(new Solve(Corpus.TIERS[tier], corpus.getTier(tier), null));
+        }
+        benchmarks.add(new Solve("hard.astar", corpus.getTier(2), SolverConfig.aStar(true)));
+        return benchmarks;
+    }
+
+    /**
+     * Successor generation, pushes with the deadlock checks and the scoring of every child. One operation is one
+     * expanded state.
+     */
+    static class Successors implements Benchmark {
+
+        private final Corpus corpus;
+
+        Successors(Corpus corpus) {
+            this.corpus = corpus;
+        }
+
+        @Override
+        public String name() {
+            return "micro.successors";
+        }
+
+        @Override
+        public long run() {
+            long operations = 0;
+            for (Corpus.Sample sample : corpus.getSamples()) {
+                for (SokobanState state : sample.getStates()) {
+                    sink += sample.getGenerator().generate(state, null).size();
+                    operations++;
+                }
+            }
+            return operations;
+        }
+    }
+
+    /**
+     * Duplicate detection, every sampled state is added to an explored set and looked up again. One operation is one
+     * add or one lookup.
+     */
+    static class Duplicates implements Benchmark {
+
+        private final Corpus corpus;
+        private final ClosedSet explored = new ClosedSet();
+
+        Duplicates(Corpus corpus) {
+            this.corpus = corpus;
+        }
+
+        @Override
+        public String name() {
+            return "micro.duplicates";
+        }
+
+        @Override
+        public long run() {
+            long operations = 0;
+            for (Corpus.Sample sample : corpus.getSamples()) {
+                explored.clear();
+                for (SokobanState state : sample.getStates()) {
+                    sink += explored.add(state) ? 1 : 0;
+                }
+                for (SokobanState state : sample.getStates()) {
+                    sink += explored.contains(state) ? 1 : 0;
+                }
+                operations += 2L * sample.getStates().size();
+            }
+            return operations;
+        }
+    }
+
+    /**
+     * Heuristic evaluation, the matching of every sampled state is solved once and every push of it is estimated
+     * from there. One operation is one estimated child.
+     */
+    static class Estimates implements Benchmark {
+
+        private final Corpus corpus;
+        private final List<Heuristic> heuristics = new ArrayList<>();
+
+        Estimates(Corpus corpus) {
+            this.corpus = corpus;
+            for (Corpus.Sample sample : corpus.getSamples()) {
+                heuristics.add(new Heuristic(sample.getGenerator().getLevel()));
+            }
+        }
+
+        @Override
+        public String name() {
+            return "micro.estimates";
+        }
+
+        @Override
+        public long run() {
+            long operations = 0;
+            for (int i = 0; i < heuristics.size(); i++) {
+                Heuristic heuristic = heuristics.get(i);
+                Corpus.Sample sample = corpus.getSamples().get(i);
+                Level level = sample.getGenerator().getLevel();
+                for (SokobanState state : sample.getStates()) {
+                    heuristic.prepare(state.getCrateCells());
+                    for (short crate : state.getCrateCells()) {
+                        for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                            int target = level.neighbour(crate, direction);
+                            if (!level.isWall(target) && !state.hasCrateAt(target)) {
+                                sink += heuristic.estimateChild(crate, target);
+                                operations++;
+                            }
+                        }
+                    }
+                }
+            }
+            return operations;
+        }
+    }
+
+    /**
+     * The open list, every sampled state is pushed with its score and popped again. One operation is one push and
+     * its pop.
+     */
+    static class Queue implements Benchmark {
+
+        private final Corpus corpus;
+        private final OpenList open = new OpenList();
+
+        Queue(Corpus corpus) {
+            this.corpus = corpus;
+        }
+
+        @Override
+        public String name() {
+            return "micro.openlist";
+        }
+
+        @Override
+        public long run() {
+            long operations = 0;
+            for (Corpus.Sample sample : corpus.getSamples()) {
+                open.clear();
+                for (SokobanState state : sample.getStates()) {
+                    open.push(state);
+                }
+                SokobanState state;
+                while ((state = open.pop()) != null) {
+                    sink += state.getScore();
+                    operations++;
+                }
+            }
+            return operations;
+        }
+    }
+
+    /**
+     * Solving every level of a tier with solveSokobanPuzzle(), the way the game calls the bot. One operation is one
+     * solved level, and the expanded nodes are reported as well.
+     */
+    static class Solve implements Benchmark {
+
+        private final String tier;
+        private final List<Puzzle> puzzles;
+        private final SokoBot bot;
+        private long nodes;
+
+        Solve(String tier, List<Puzzle> puzzles, SolverConfig config) {
+            this.tier = tier;
+            this.puzzles = puzzles;
+            this.bot = new SokoBot(config);
+        }
+
+        @Override
+        public String name() {
+            return "solve." + tier;
+        }
+
+        @Override
+        public long run() {
+            long operations = 0;
+            for (Puzzle puzzle : puzzles) {
+                bot.reset();
+                String moves = bot.solveSokobanPuzzle(puzzle.getWidth(), puzzle.getHeight(), puzzle.getMapData(),
+                        puzzle.getItemsData());
+                if (moves == null) {
+                    throw new IllegalStateException("Corpus level " + puzzle.getName() + " was not solved");
+                }
+                sink += moves.length();
+                nodes += bot.getExpandedNodes();
+                operations++;
+            }
+            return operations;
+        }
+
+        @Override
+        public long takeNodes() {
+            long taken = nodes;
+            nodes = 0;
+            return taken;
+        }
+    }
+}
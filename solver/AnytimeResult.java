@@ -0,0 +1,80 @@
+package solver;
+
+/**
+ * Result of AnytimeSolver, the best solution it found within its budget and what is known about it.
+ */
+public class AnytimeResult {
+
+    public enum Status {
+        // The solution has the fewest pushes.
+        OPTIMAL,
+        // There is a solution, but the budget ran out before it was proven to have the fewest pushes.
+        SUBOPTIMAL,
+        // The budget ran out or the search was cancelled before any solution was found.
+        TIMEOUT,
+        // The whole state space was searched and there is no solution.
+        UNSOLVABLE
+    }
+
+    private final Status status;
+    private final String moves;
+    private final int pushes;
+    private final int lowerBound;
+    private final int improvements;
+    private final long expandedNodes;
+    private final long elapsedNanos;
+
+    public AnytimeResult(Status status, String moves, int pushes, int lowerBound, int improvements,
+                         long expandedNodes, long elapsedNanos) {
+        this.status = status;
+        this.moves = moves;
+        this.pushes = pushes;
+        this.lowerBound = lowerBound;
+        this.improvements = improvements;
+        this.expandedNodes = expandedNodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    // Move sequence in u/d/l/r, null if no solution was found.
+    public String getMoves() {
+        return moves;
+    }
+
+    public boolean isSolved() {
+        return moves != null;
+    }
+
+    // Pushes of the solution, -1 if no solution was found.
+    public int getPushes() {
+        return pushes;
+    }
+
+    // Estimate of the initial state, no solution has fewer pushes. -1 if the crates can never all reach a goal.
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    // Number of times a shorter solution was found.
+    public int getImprovements() {
+        return improvements;
+    }
+
+    // States expanded by all the searches together.
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s pushes=%d lowerBound=%d improvements=%d expanded=%d elapsed=%dms", status, pushes,
+                lowerBound, improvements, expandedNodes, elapsedNanos / 1000000);
+    }
+}
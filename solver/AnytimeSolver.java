@@ -0,0 +1,157 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Solver for a latency budget: it finds a first solution fast and shortens it while time remains.
+ *
+ * The searches of a schedule run one after the other on the same SokoBot, from aggressive weighted search down to
+ * A*. Every search after the first one is bounded by the pushes of the best solution so far, so it only looks for
+ * shorter ones and prunes every state whose pushes plus estimate cannot beat it. Once a search with admissible
+ * weights ends, the best solution is optimal: either that search found it, or it proved there is no shorter one.
+ *
+ * The budget is checked before every expansion, so the solver returns close to its deadline with the best solution
+ * it has and a status that tells how good it is.
+ */
+public class AnytimeSolver {
+
+    private final List<SolverConfig> schedule;
+    private final SokoBot bot = new SokoBot();
+
+    // Set from another thread to stop the search, it is passed on to the search that is running.
+    private volatile boolean cancelled = false;
+
+    /**
+     * The default schedule: greedy, weighted A* with the weights 5, 3, 2 and 1.5, then A*, all over pushes.
+     */
+    public AnytimeSolver() {
+        this(Arrays.asList(SolverConfig.greedy(true), SolverConfig.weighted(true, 1, 5),
+                SolverConfig.weighted(true, 1, 3), SolverConfig.weighted(true, 1, 2),
+                SolverConfig.weighted(true, 2, 3), SolverConfig.aStar(true)));
+    }
+
+    /**
+     * @param schedule - Searches to run in order, all over pushes. Only one whose weights are admissible can prove a
+     *                 solution optimal, so it should end with one
+     */
+    public AnytimeSolver(List<SolverConfig> schedule) {
+        if (schedule.isEmpty()) {
+            throw new IllegalArgumentException("The schedule needs at least one search");
+        }
+        for (SolverConfig config : schedule) {
+            if (!config.isPushSearch()) {
+                throw new IllegalArgumentException("Anytime solving needs push searches, not " + config);
+            }
+        }
+        this.schedule = new ArrayList<>(schedule);
+    }
+
+    /**
+     * This method compiles the map and solves the puzzle within the budget. Unlike SokoBot, errors are thrown to the
+     * caller, an invalid map as an IllegalArgumentException.
+     *
+     * @param width - Width of the map
+     * @param height - Height of the map
+     * @param mapData - Walls and goals
+     * @param itemsData - Player and crate positions
+     * @param budget - Deadline, node and memory limits
+     * @return The best solution found and its status.
+     */
+    public AnytimeResult solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData,
+                                           SearchBudget budget) {
+        return solve(new Level(width, height, mapData), itemsData, budget);
+    }
+
+    /**
+     * This method runs the searches of the schedule until one of them proves its solution optimal, the state space
+     * turns out to have no solution, or the budget runs out. The node limit of the budget counts the expansions of
+     * all the searches together, the memory limit applies to each search.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param itemsData - Player and crate positions
+     * @param budget - Deadline, node and memory limits
+     * @return The best solution found and its status.
+     */
+    public AnytimeResult solve(Level level, char[][] itemsData, SearchBudget budget) {
+        long start = System.nanoTime();
+
+        // The estimate of the initial state is a lower bound of every solution, reaching it ends the search early.
+        SokobanState initialState = new SuccessorGenerator(level, SolverConfig.aStar(true)).initialState(itemsData);
+        if (initialState == null) {
+            return new AnytimeResult(AnytimeResult.Status.UNSOLVABLE, null, -1, -1, 0, 0, System.nanoTime() - start);
+        }
+        int lowerBound = initialState.getScore();
+
+        String bestMoves = null;
+        int bestPushes = Integer.MAX_VALUE;
+        int improvements = 0;
+        long expandedNodes = 0;
+        AnytimeResult.Status status = null;
+
+        for (SolverConfig config : schedule) {
+            if (bestPushes <= lowerBound) {
+                status = AnytimeResult.Status.OPTIMAL;
+                break;
+            }
+
+            bot.reset();
+            bot.setConfig(config);
+            bot.setCostBound(bestPushes);
+            bot.setBudget(budget.withMaxNodes(Math.max(0, budget.getMaxNodes() - expandedNodes)));
+            // Checked after the reset, which forgets a cancel() of the bot, and before the search, which sees any
+            // cancel() that comes later.
+            if (cancelled) {
+                break;
+            }
+            Solution solution = bot.search(level, itemsData);
+            expandedNodes += bot.getExpandedNodes();
+
+            if (solution.isSolved()) {
+                bestMoves = solution.getMoves();
+                bestPushes = solution.getCost();
+                improvements++;
+            }
+            if (bot.isCancelled() || bot.isBudgetExhausted()) {
+                break;
+            }
+            // The search ran to its end. Without a bound that means the puzzle has no solution at all.
+            if (bestMoves == null) {
+                status = AnytimeResult.Status.UNSOLVABLE;
+                break;
+            }
+            if (config.isAdmissible()) {
+                status = AnytimeResult.Status.OPTIMAL;
+                break;
+            }
+        }
+        bot.reset();
+
+        if (status == null) {
+            status = bestMoves != null ? AnytimeResult.Status.SUBOPTIMAL : AnytimeResult.Status.TIMEOUT;
+        }
+        return new AnytimeResult(status, bestMoves, bestMoves != null ? bestPushes : -1, lowerBound, improvements,
+                expandedNodes, System.nanoTime() - start);
+    }
+
+    /**
+     * This method stops a solve() that is running on another thread, which then returns the best solution so far.
+     */
+    public void cancel() {
+        cancelled = true;
+        bot.cancel();
+    }
+
+    /**
+     * This method forgets a cancel(), so the solver can be used for the next puzzle.
+     */
+    public void reset() {
+        cancelled = false;
+        bot.reset();
+    }
+
+    public List<SolverConfig> getSchedule() {
+        return schedule;
+    }
+}
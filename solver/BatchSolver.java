@@ -0,0 +1,258 @@
+package solver;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Solves whole level collections on a fixed pool of threads and writes one JSON line per level as soon as it is done.
+ *
+ * Levels are read one at a time and handed to the pool. At most twice as many levels as there are threads are read
+ * ahead, so a large collection never sits in memory. Every thread keeps one SokoBot and resets it between levels, so
+ * the open list and explored set keep their arrays. A level that runs out of time is cancelled by a watchdog, and its
+ * thread moves on to the next level.
+ *
+ * Every line has the fields index, name, status (solved, unsolvable, timeout or error), moves, pushes, nodes and
+ * timeMs. Lines are written in the order the levels finish, the index tells where they belong.
+ */
+public class BatchSolver {
+
+    private final int threads;
+    private final long timeoutMillis;
+    // Search of every bot, null lets every bot pick one from its level.
+    private final SolverConfig config;
+
+    /**
+     * @param threads - Number of levels solved at the same time
+     * @param timeoutMillis - Time limit of a level, 0 for none
+     * @param config - Search to run, null to pick one per level
+     */
+    public BatchSolver(int threads, long timeoutMillis, SolverConfig config) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Batch solving needs at least one thread");
+        }
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+        this.config = config;
+    }
+
+    /**
+     * This method solves every level and writes the results. It returns once the last result has been written.
+     * An Error such as OutOfMemoryError may leave the JVM in a bad state, so once a level throws one no more levels
+     * are started, and the Error is thrown once the levels that were running have written their lines.
+     *
+     * @param levels - Levels to solve, read as they are needed
+     * @param output - Where the JSON lines go, flushed after every line
+     * @return The number of levels that were solved.
+     */
+    public int solveAll(Iterator<Puzzle> levels, Writer output) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ThreadLocal<SokoBot> bots = ThreadLocal.withInitial(() -> new SokoBot(config));
+        Semaphore readAhead = new Semaphore(threads * 2);
+        AtomicInteger solved = new AtomicInteger();
+        AtomicReference<Error> failure = new AtomicReference<>();
+
+        try {
+            while (levels.hasNext()) {
+                readAhead.acquire();
+                if (failure.get() != null) {
+                    readAhead.release();
+                    break;
+                }
+                Puzzle puzzle = levels.next();
+                pool.execute(() -> {
+                    try {
+                        String line = solve(bots.get(), puzzle, watchdog, solved);
+                        synchronized (output) {
+                            output.write(line);
+                            output.write(System.lineSeparator());
+                            output.flush();
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    } catch (Error error) {
+                        failure.compareAndSet(null, error);
+                    } finally {
+                        readAhead.release();
+                    }
+                });
+            }
+            // Every level holds a permit until its line is written.
+            readAhead.acquire(threads * 2);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        } finally {
+            pool.shutdownNow();
+            watchdog.shutdownNow();
+        }
+        return solved.get();
+    }
+
+    /**
+     * This method solves one level with the bot of the thread and formats the result.
+     *
+     * @param bot - Bot of the thread, reset before it is used
+     * @param puzzle - Level to solve
+     * @param watchdog - Scheduler of the time limit
+     * @param solved - Counter of the solved levels
+     * @return The JSON line of the level.
+     */
+    private String solve(SokoBot bot, Puzzle puzzle, ScheduledExecutorService watchdog, AtomicInteger solved) {
+        bot.reset();
+        ScheduledFuture<?> timeout = timeoutMillis > 0
+                ? watchdog.schedule(bot::cancel, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+
+        long start = System.nanoTime();
+        String moves = null;
+        String status;
+        try {
+            // search() throws the errors that solveSokobanPuzzle() would only print, they are reported as such.
+            Level level = new Level(puzzle.getWidth(), puzzle.getHeight(), puzzle.getMapData());
+            moves = bot.search(level, puzzle.getItemsData()).getMoves();
+            status = moves != null ? "solved" : bot.isCancelled() ? "timeout" : "unsolvable";
+            if (moves != null) {
+                solved.incrementAndGet();
+            }
+        } catch (RuntimeException ex) {
+            status = "error";
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        StringBuilder s = new StringBuilder();
+        s.append("{\"index\":").append(puzzle.getIndex());
+        s.append(",\"name\":").append(quote(puzzle.getName()));
+        s.append(",\"status\":\"").append(status).append('"');
+        s.append(",\"moves\":").append(moves == null ? "null" : quote(moves));
+        s.append(",\"pushes\":").append(moves == null ? 0 : countPushes(puzzle, moves));
+        s.append(",\"nodes\":").append(bot.getExpandedNodes());
+        s.append(",\"timeMs\":").append(millis);
+        return s.append('}').toString();
+    }
+
+    /**
+     * This is a helper function that replays a solution to count the moves that push a crate.
+     *
+     * @param puzzle - Level the solution is for
+     * @param moves - Move sequence of the solution
+     * @return The number of pushes.
+     */
+    static int countPushes(Puzzle puzzle, String moves) {
+        int width = puzzle.getWidth();
+        boolean[] crates = new boolean[width * puzzle.getHeight()];
+        int player = 0;
+        for (int y = 0; y < puzzle.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                char item = puzzle.getItemsData()[y][x];
+                if (item == '@') {
+                    player = y * width + x;
+                } else if (item == '$') {
+                    crates[y * width + x] = true;
+                }
+            }
+        }
+
+        int pushes = 0;
+        for (int i = 0; i < moves.length(); i++) {
+            char move = moves.charAt(i);
+            int step = move == 'u' ? -width : move == 'd' ? width : move == 'l' ? -1 : 1;
+            player += step;
+            if (crates[player]) {
+                crates[player] = false;
+                crates[player + step] = true;
+                pushes++;
+            }
+        }
+        return pushes;
+    }
+
+    private static String quote(String text) {
+        StringBuilder s = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < 0x20) {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+        return s.append('"').toString();
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * Usage: BatchSolver [--threads n] [--timeout seconds] [--output file] [file ...]
+     * Without files, or with -, the levels are read from the standard input. The results go to the standard output
+     * unless an output file is given.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = 60000;
+        String outputFile = null;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--timeout":
+                    timeoutMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+                    break;
+                case "--output":
+                    outputFile = args[++i];
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            inputs.add("-");
+        }
+
+        BatchSolver batch = new BatchSolver(threads, timeoutMillis, null);
+        try (Writer output = outputFile == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)) {
+            for (String input : inputs) {
+                try (LevelReader levels = input.equals("-")
+                        ? new LevelReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : LevelReader.open(Paths.get(input))) {
+                    batch.solveAll(levels, output);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Push search that runs from both ends of the puzzle and stops where the two searches meet.
+ *
+ * The forward search pushes crates from the initial state, like SokoBot does. The backward search starts with every
+ * crate on a goal and pulls them. It has one start state for every area the player can stand in, because the
+ * player can end anywhere. The backward search scores a configuration by matching its crates to the crates of the
+ * initial state, so pulls that can never bring a crate back to its start are pruned.
+ *
+ * Both searches store states with the player normalized to the lowest cell of its area, and hash them with the same
+ * Zobrist table. So a state seen in one direction can be looked up in the table of the other one. The two
+ * searches take turns expanding a state, and a new state that the other side has already seen joins the two halves
+ * into a solution.
+ *
+ * The backward search starts from every crate on a goal, so it needs as many crates as goals. A puzzle with a
+ * different number of crates is solved by the forward search on its own, a SokoBot with the same configuration.
+ */
+public class BidirectionalSolver {
+
+    private final SolverConfig config;
+    private long expandedNodes;
+
+    // Set from another thread to stop the search, it is checked before every expansion.
+    private volatile boolean cancelled = false;
+    // Forward search of a puzzle whose crates do not match its goals, null otherwise.
+    private volatile SokoBot forwardOnly;
+
+    // The backward search, the forward one lives in its generator.
+    private Level level;
+    private ZobristTable zobrist;
+    private Reachability reachability;
+    private Reachability childReachability;
+    private Heuristic backwardHeuristic;
+
+    public BidirectionalSolver() {
+        this(SolverConfig.greedy(true));
+    }
+
+    /**
+     * @param config - Scoring of both searches, must be a push search
+     */
+    public BidirectionalSolver(SolverConfig config) {
+        if (!config.isPushSearch()) {
+            throw new IllegalArgumentException("Bidirectional search only works on pushes");
+        }
+        this.config = config;
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        Level level;
+        try {
+            level = new Level(width, height, mapData);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        return solve(level, itemsData);
+    }
+
+    /**
+     * This method runs the forward and the backward search in turns until they meet.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param itemsData - Player and crate positions
+     * @return Move sequence that solves the puzzle, or null if there is none or the search was cancelled.
+     */
+    public String solve(Level level, char[][] itemsData) {
+        cancelled = false;
+        this.level = level;
+        this.zobrist = level.getZobrist();
+        this.reachability = new Reachability(level);
+        this.childReachability = new Reachability(level);
+        expandedNodes = 0;
+
+        SuccessorGenerator generator = new SuccessorGenerator(level, config);
+        SokobanState initialState = generator.initialState(itemsData);
+        if (initialState == null) {
+            return null;
+        }
+        if (initialState.getCrateCells().length != level.getGoalCells().length) {
+            return solveForward(level, itemsData);
+        }
+
+        // The backward search measures how far every crate is from the crates of the initial state.
+        short[] initialCrateCells = initialState.getCrateCells();
+        int[][] startDistances = new int[initialCrateCells.length][];
+        for (int i = 0; i < initialCrateCells.length; i++) {
+            startDistances[i] = level.pushDistances(initialCrateCells[i]);
+        }
+        backwardHeuristic = new Heuristic(startDistances);
+
+        // Every state either search has generated, these are also the tables where the two searches meet.
+        ClosedSet forwardSeen = new ClosedSet();
+        ClosedSet backwardSeen = new ClosedSet();
+        OpenList forwardOpen = new OpenList();
+        OpenList backwardOpen = new OpenList();
+
+        for (SokobanState goalState : goalStates()) {
+            backwardSeen.add(goalState);
+            backwardOpen.push(goalState);
+        }
+
+        forwardSeen.add(initialState);
+        forwardOpen.push(initialState);
+        SokobanState meeting = backwardSeen.get(initialState);
+        if (meeting != null) {
+            return join(generator, initialState, meeting);
+        }
+
+        // If either search runs out of states, the puzzle has no solution.
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+            if (cancelled) {
+                return null;
+            }
+
+            SokobanState frontier = forwardOpen.pop();
+            if (frontier != null) {
+                expandedNodes++;
+                for (SokobanState state : generator.generate(frontier, forwardSeen)) {
+                    meeting = backwardSeen.get(state);
+                    if (meeting != null) {
+                        return join(generator, state, meeting);
+                    }
+                    forwardSeen.add(state);
+                    forwardOpen.push(state);
+                }
+            }
+
+            frontier = backwardOpen.pop();
+            if (frontier != null) {
+                expandedNodes++;
+                for (SokobanState state : generatePulls(frontier, backwardSeen)) {
+                    meeting = forwardSeen.get(state);
+                    if (meeting != null) {
+                        return join(generator, meeting, state);
+                    }
+                    backwardSeen.add(state);
+                    backwardOpen.push(state);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This is a helper function that solves a puzzle the backward search cannot start on, with the forward search
+     * alone.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param itemsData - Player and crate positions
+     * @return Move sequence that solves the puzzle, or null if there is none or the search was cancelled.
+     */
+    private String solveForward(Level level, char[][] itemsData) {
+        SokoBot bot = new SokoBot(config);
+        forwardOnly = bot;
+        if (cancelled) {
+            return null;
+        }
+        try {
+            return bot.search(level, itemsData).getMoves();
+        } finally {
+            expandedNodes = bot.getExpandedNodes();
+            forwardOnly = null;
+        }
+    }
+
+    /**
+     * This method stops a search that is running on another thread. solve() then returns null.
+     */
+    public void cancel() {
+        cancelled = true;
+        SokoBot bot = forwardOnly;
+        if (bot != null) {
+            bot.cancel();
+        }
+    }
+
+    // Number of states expanded by both searches in the last solve().
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * This method builds the start states of the backward search, every crate on a goal and the player in one of
+     * the areas that are left between them.
+     *
+     * @return One state for every area of the player, none if the goals cannot be pulled back to the crates.
+     */
+    private List<SokobanState> goalStates() {
+        int[] goalCells = level.getGoalCells();
+        short[] crateCells = new short[goalCells.length];
+        for (int i = 0; i < goalCells.length; i++) {
+            crateCells[i] = (short) goalCells[i];
+        }
+
+        List<SokobanState> goalStates = new ArrayList<>();
+        int estimate = backwardHeuristic.estimate(crateCells);
+        if (estimate == Heuristic.INFINITE) {
+            return goalStates;
+        }
+
+        boolean[] covered = new boolean[level.getCellCount()];
+        for (int cell = 0; cell < covered.length; cell++) {
+            if (covered[cell] || level.isWall(cell) || level.isGoal(cell)) {
+                continue;
+            }
+            int playerCell = reachability.fill(cell, crateCells);
+            for (int other = cell; other < covered.length; other++) {
+                covered[other] |= reachability.isReachable(other);
+            }
+
+            SokobanState goalState = new SokobanState(playerCell, crateCells, null, "", 0,
+                    zobrist.hash(playerCell, crateCells));
+            goalState.setHeuristicScore(config.score(0, estimate));
+            goalStates.add(goalState);
+        }
+        return goalStates;
+    }
+
+    /**
+     * This method generates the possible pulls of a backward state.
+     * The player has to stand next to a crate with a free cell behind itself, then steps back and drags the crate
+     * along. In the forward direction that is a push of the crate back to where it was.
+     *
+     * @param frontier - The current state of the backward search
+     * @param explored - States to leave out
+     * @return A List of possible pulls
+     */
+    private List<SokobanState> generatePulls(SokobanState frontier, ClosedSet explored) {
+        List<SokobanState> generatedStates = new ArrayList<>();
+        short[] crateCells = frontier.getCrateCells();
+        reachability.fill(frontier.getPlayerCell(), crateCells);
+        backwardHeuristic.prepare(crateCells);
+
+        for (short crateCell : crateCells) {
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int pulledCrateCell = level.neighbour(crateCell, direction);
+                int stepBackCell = level.neighbour(pulledCrateCell, direction);
+                // The player has to reach the cell next to the crate and have room to step back.
+                if (!reachability.isReachable(pulledCrateCell) || level.isWall(stepBackCell)
+                        || frontier.hasCrateAt(stepBackCell)) {
+                    continue;
+                }
+
+                short[] newCrateCells = SokobanState.moveCrate(crateCells, crateCell, pulledCrateCell);
+                int newPlayerCell = childReachability.fill(stepBackCell, newCrateCells);
+                long hash = frontier.getHash() ^ zobrist.playerKey(frontier.getPlayerCell()) ^ zobrist.playerKey(newPlayerCell)
+                        ^ zobrist.crateKey(crateCell) ^ zobrist.crateKey(pulledCrateCell);
+
+                SokobanState temporaryState = new SokobanState(newPlayerCell, newCrateCells, frontier,
+                        String.valueOf(Level.MOVES[Level.opposite(direction)]), frontier.getMoves() + 1, hash);
+                if (explored.contains(temporaryState)) {
+                    continue;
+                }
+
+                int estimate = backwardHeuristic.estimateChild(crateCell, pulledCrateCell);
+                if (estimate == Heuristic.INFINITE) {
+                    continue;
+                }
+                temporaryState.setHeuristicScore(config.score(temporaryState.getMoves(), estimate));
+                generatedStates.add(temporaryState);
+            }
+        }
+        return generatedStates;
+    }
+
+    /**
+     * This is a helper function that joins the two halves of a solution where the searches meet.
+     * The forward half is walked back to the initial state and the backward half on to a goal state. In between,
+     * every configuration is one push away from the last, so the generator can turn them into player moves.
+     *
+     * @param generator - Generator of the forward search
+     * @param forward - Meeting state as reached by the forward search
+     * @param backward - The same state as reached by the backward search
+     * @return Move sequence in String from the initial state to the goal.
+     */
+    private String join(SuccessorGenerator generator, SokobanState forward, SokobanState backward) {
+        List<short[]> configurations = new ArrayList<>();
+        for (SokobanState state = forward; state != null; state = state.getParent()) {
+            configurations.add(state.getCrateCells());
+        }
+        Collections.reverse(configurations);
+        for (SokobanState state = backward.getParent(); state != null; state = state.getParent()) {
+            configurations.add(state.getCrateCells());
+        }
+        return generator.getPushMoves(generator.getInitialPlayerCell(), configurations);
+    }
+}
@@ -0,0 +1,96 @@
+package solver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * SokoBot behind a SolutionCache, so a puzzle that was solved before, in any rotation or reflection, is answered
+ * without a search.
+ *
+ * The puzzle is turned into its canonical orientation, and a cached solution is turned back into the orientation
+ * of the puzzle. A miss is solved by the bot, and its result is stored unless the search was cancelled, ran out of
+ * its budget or failed. A solver is used by one thread at a time, like its bot, but any number of solvers can share
+ * one cache.
+ */
+public class CachingSolver {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final Path DEFAULT_FILE = Paths.get(System.getProperty("java.io.tmpdir"), "sokobot-cache",
+            "solutions.bin");
+
+    private final SolutionCache cache;
+    private final SokoBot bot;
+
+    /**
+     * @param cache - Cache to look the puzzles up in and store the solutions to
+     */
+    public CachingSolver(SolutionCache cache) {
+        this(cache, new SokoBot());
+    }
+
+    /**
+     * @param cache - Cache to look the puzzles up in and store the solutions to
+     * @param bot - Bot that solves the puzzles that are not cached
+     */
+    public CachingSolver(SolutionCache cache, SokoBot bot) {
+        this.cache = cache;
+        this.bot = bot;
+    }
+
+    /**
+     * This method opens the cache in the temporary directory, where it outlives the process.
+     *
+     * @return A solver with a cache backed by DEFAULT_FILE.
+     * @throws IOException if the cache file cannot be opened
+     */
+    public static CachingSolver withDefaultCache() throws IOException {
+        return new CachingSolver(new SolutionCache(DEFAULT_CAPACITY, DEFAULT_FILE));
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        CanonicalLevel canonical = CanonicalLevel.of(width, height, mapData, itemsData);
+        SolutionCache.Entry entry = null;
+        try {
+            entry = cache.get(canonical);
+        } catch (IOException ex) {
+            // The cache only saves time, without it the puzzle is solved as if it had missed.
+            ex.printStackTrace();
+        }
+        if (entry != null) {
+            return entry.isSolvable() ? canonical.fromCanonical(entry.getMoves()) : null;
+        }
+
+        Solution solution;
+        try {
+            bot.reset();
+            solution = bot.search(new Level(width, height, mapData), itemsData);
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        if (solution.isSolved() || !bot.isCancelled() && !bot.isBudgetExhausted()) {
+            try {
+                cache.put(canonical, solution.isSolved() ? canonical.toCanonical(solution.getMoves()) : null);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return solution.getMoves();
+    }
+
+    /**
+     * This method stops a search of the bot that is running on another thread.
+     */
+    public void cancel() {
+        bot.cancel();
+    }
+
+    public SolutionCache getCache() {
+        return cache;
+    }
+
+    public SokoBot getBot() {
+        return bot;
+    }
+}
@@ -0,0 +1,205 @@
+package solver;
+
+/**
+ * A puzzle in the orientation shared by all its rotations and reflections, so that they are found under one key.
+ *
+ * Every cell is written as one XSB character, the map and the items together, row by row. Each of the 8 symmetries
+ * of the grid is a transpose or not, followed by a mirror of the columns, of the rows, or of both. The canonical
+ * form is the one whose text is the smallest. The transform that leads to it also turns the moves of a solution,
+ * so a solution is stored in the canonical orientation and turned back into the orientation of every later puzzle.
+ */
+public class CanonicalLevel {
+
+    private static final char[] MOVES = {'u', 'd', 'l', 'r'};
+    // Column and row step of every move, in the order of MOVES.
+    private static final int[] MOVE_X = {0, 0, -1, 1};
+    private static final int[] MOVE_Y = {-1, 1, 0, 0};
+
+    private final int width;
+    private final int height;
+    private final String key;
+    private final long fingerprint;
+    private final int transform;
+    // Canonical move of every move of the puzzle, and the way back, in the order of MOVES.
+    private final char[] forward = new char[4];
+    private final char[] backward = new char[4];
+
+    private CanonicalLevel(int width, int height, String key, int transform) {
+        this.width = width;
+        this.height = height;
+        this.key = key;
+        this.transform = transform;
+        this.fingerprint = fingerprint(key);
+
+        for (int move = 0; move < MOVES.length; move++) {
+            int x = MOVE_X[move];
+            int y = MOVE_Y[move];
+            if ((transform & 4) != 0) {
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+            if ((transform & 1) != 0) {
+                x = -x;
+            }
+            if ((transform & 2) != 0) {
+                y = -y;
+            }
+            forward[move] = MOVES[moveIndex(x, y)];
+            backward[moveIndex(x, y)] = MOVES[move];
+        }
+    }
+
+    /**
+     * This method finds the canonical orientation of a puzzle.
+     *
+     * @param width - Width of the map
+     * @param height - Height of the map
+     * @param mapData - Walls and goals
+     * @param itemsData - Player and crate positions
+     * @return The puzzle in its canonical orientation.
+     */
+    public static CanonicalLevel of(int width, int height, char[][] mapData, char[][] itemsData) {
+        char[][] cells = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                cells[y][x] = cell(mapData[y][x], itemsData[y][x]);
+            }
+        }
+
+        String best = null;
+        int bestTransform = 0;
+        for (int transform = 0; transform < 8; transform++) {
+            String text = write(cells, width, height, transform);
+            if (best == null || text.compareTo(best) < 0) {
+                best = text;
+                bestTransform = transform;
+            }
+        }
+        boolean transposed = (bestTransform & 4) != 0;
+        return new CanonicalLevel(transposed ? height : width, transposed ? width : height, best, bestTransform);
+    }
+
+    // XSB character of a cell, anything that is not a wall, goal, player or crate is floor.
+    private static char cell(char map, char item) {
+        if (map == '#') {
+            return '#';
+        }
+        boolean goal = map == '.';
+        if (item == '@') {
+            return goal ? '+' : '@';
+        }
+        if (item == '$') {
+            return goal ? '*' : '$';
+        }
+        return goal ? '.' : ' ';
+    }
+
+    /**
+     * This is a helper function that writes the cells in one of the 8 orientations.
+     *
+     * @param cells - Cells of the puzzle, row by row
+     * @param width - Width of the puzzle
+     * @param height - Height of the puzzle
+     * @param transform - Bit 4 transposes, then bit 1 mirrors the columns and bit 2 the rows
+     * @return The size and then the rows of the turned puzzle.
+     */
+    private static String write(char[][] cells, int width, int height, int transform) {
+        boolean transposed = (transform & 4) != 0;
+        int turnedWidth = transposed ? height : width;
+        int turnedHeight = transposed ? width : height;
+        StringBuilder s = new StringBuilder(16 + (turnedWidth + 1) * turnedHeight);
+        s.append(turnedWidth).append('x').append(turnedHeight).append('\n');
+        for (int y = 0; y < turnedHeight; y++) {
+            int rowY = (transform & 2) != 0 ? turnedHeight - 1 - y : y;
+            for (int x = 0; x < turnedWidth; x++) {
+                int columnX = (transform & 1) != 0 ? turnedWidth - 1 - x : x;
+                s.append(transposed ? cells[columnX][rowY] : cells[rowY][columnX]);
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
+
+    // Index in MOVES of the move with the given step.
+    private static int moveIndex(int x, int y) {
+        return y < 0 ? Level.UP : y > 0 ? Level.DOWN : x < 0 ? Level.LEFT : Level.RIGHT;
+    }
+
+    private static int indexOf(char move) {
+        switch (Character.toLowerCase(move)) {
+            case 'u':
+                return Level.UP;
+            case 'd':
+                return Level.DOWN;
+            case 'l':
+                return Level.LEFT;
+            case 'r':
+                return Level.RIGHT;
+            default:
+                return -1;
+        }
+    }
+
+    // 64-bit FNV-1a of the text, like the fingerprint of Level.
+    private static long fingerprint(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @param moves - Solution of the puzzle in its own orientation
+     * @return The same solution in the canonical orientation.
+     */
+    public String toCanonical(String moves) {
+        return turn(moves, forward);
+    }
+
+    /**
+     * @param moves - Solution in the canonical orientation
+     * @return The same solution in the orientation of this puzzle.
+     */
+    public String fromCanonical(String moves) {
+        return turn(moves, backward);
+    }
+
+    // Turns every move with the table, pushes stay upper case.
+    private static String turn(String moves, char[] table) {
+        char[] turned = new char[moves.length()];
+        for (int i = 0; i < turned.length; i++) {
+            char move = moves.charAt(i);
+            int index = indexOf(move);
+            if (index < 0) {
+                throw new IllegalArgumentException("Not a move: " + move);
+            }
+            turned[i] = Character.isUpperCase(move) ? Character.toUpperCase(table[index]) : table[index];
+        }
+        return new String(turned);
+    }
+
+    // Width of the canonical orientation.
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // The text of the canonical orientation, equal for two puzzles exactly when one is a symmetry of the other.
+    public String getKey() {
+        return key;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // Symmetry that turns the puzzle into the canonical orientation.
+    public int getTransform() {
+        return transform;
+    }
+}
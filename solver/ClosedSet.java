@@ -0,0 +1,121 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash set of explored states keyed by their 64-bit Zobrist hash.
+ *
+ * The hashes are kept in a primitive array next to the states, so a probe only touches the long array
+ * until two hashes are equal. Only then the full equals() of the state is called.
+ *
+ * Besides the explored states, it is also used by the OpenList to remember the cheapest entry of every
+ * state that was ever queued (see get() and put()).
+ */
+public class ClosedSet {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private long[] hashes;
+    private SokobanState[] states;
+    private int mask;
+    private int size;
+
+    public ClosedSet() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * This method adds a state to the set.
+     *
+     * @param state - State to add
+     * @return True if the state was added, false if an equal state was already in the set.
+     */
+    public boolean add(SokobanState state) {
+        if (contains(state)) {
+            return false;
+        }
+        put(state);
+        return true;
+    }
+
+    public boolean contains(SokobanState state) {
+        return get(state) != null;
+    }
+
+    /**
+     * This method looks up the stored state that is equal to the given one.
+     *
+     * @param state - State to look for
+     * @return The stored state, or null if there is none.
+     */
+    public SokobanState get(SokobanState state) {
+        long hash = state.getHash();
+        int i = (int) hash & mask;
+        while (states[i] != null) {
+            if (hashes[i] == hash && states[i].equals(state)) {
+                return states[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * This method stores a state, replacing an equal state if there is one.
+     *
+     * @param state - State to store
+     * @return The state that was replaced, or null if the state was not in the set yet.
+     */
+    public SokobanState put(SokobanState state) {
+        long hash = state.getHash();
+        int i = (int) hash & mask;
+        while (states[i] != null) {
+            if (hashes[i] == hash && states[i].equals(state)) {
+                SokobanState previous = states[i];
+                states[i] = state;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        hashes[i] = hash;
+        states[i] = state;
+        if (++size > (mask + 1) * 3 / 4) {
+            grow();
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The arrays are kept, so a set that is reused for the next puzzle does not grow again from scratch.
+    public void clear() {
+        Arrays.fill(states, null);
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        states = new SokobanState[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        SokobanState[] oldStates = states;
+        allocate(oldStates.length * 2);
+        for (int j = 0; j < oldStates.length; j++) {
+            if (oldStates[j] != null) {
+                int i = (int) oldHashes[j] & mask;
+                while (states[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                hashes[i] = oldHashes[j];
+                states[i] = oldStates[j];
+                size++;
+            }
+        }
+    }
+}
@@ -20,7 +20,7 @@ public class Coordinate {
 
     @Override
     public int hashCode() {
-        return x * 1000 + y;
+        return 31 * x + y;
     }
 
     // equals method used for contains()
@@ -33,8 +33,6 @@ public class Coordinate {
         if (this.getClass() != object.getClass())
             return false;
         Coordinate c = (Coordinate) object;
-        if (this.hashCode() == c.hashCode())
-            return true;
         return ((this.x == c.x) && (this.y == c.y));
     }
 
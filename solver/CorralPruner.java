@@ -0,0 +1,332 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PI-corral pruning of push search, which leaves out the pushes that do not matter to the part of the map that has
+ * to be solved next.
+ *
+ * A corral is an area the player cannot reach, closed off by crates. A crate of the corral border is one that
+ * touches both the corral and the area of the player. A corral is a PI-corral if the player can reach every cell
+ * from which a border crate can be pushed into it (P), and every push of a border crate that is possible goes into
+ * it (I). The crates of such a corral have to be pushed sooner or later, and pushing them first never makes a
+ * solution impossible, so only the pushes of the border crates of one PI-corral need to be tried. Corrals whose
+ * crates are all on goals with no free goal inside are done and do not count.
+ *
+ * A PI-corral is also checked for a deadlock: its crates are searched on their own, with every other crate taken
+ * off the map. If they can neither all reach a goal nor get a crate out of the corral, the state is a deadlock,
+ * since the other crates could only be in the way. The search is bounded, and its result is cached by the crates of
+ * the corral and the area of the player.
+ */
+public class CorralPruner {
+
+    // Results of analyze().
+    public static final int NONE = 0;
+    public static final int RESTRICTED = 1;
+    public static final int DEADLOCK = 2;
+
+    // States the deadlock search of a corral may expand before the corral is taken as solvable. Deadlocked corrals
+    // are small and are proven in a few states, a larger search mostly pays for corrals that are fine.
+    private static final int DEADLOCK_NODES = 300;
+    private static final int CACHE_SIZE = 1 << 14;
+
+    private final Level level;
+    private final FreezeDetector freezeDetector;
+
+    // Corral of every cell for the current stamp, and the crates of the last state.
+    private final int[] corralStamp;
+    private final int[] corralOf;
+    private final int[] crateStamp;
+    // Border crates of the chosen corral carry the current stamp.
+    private final int[] allowed;
+    private int stamp = 0;
+    private final int[] queue;
+
+    // Scratch space of the deadlock search.
+    private final Reachability reachability;
+    private final Reachability childReachability;
+    private final NodeArena arena = new NodeArena();
+    private int[] open = new int[64];
+
+    // Crates and area of the player of corrals that were searched, true if they are a deadlock.
+    private final Map<String, Boolean> deadlocks = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public CorralPruner(Level level, FreezeDetector freezeDetector) {
+        this.level = level;
+        this.freezeDetector = freezeDetector;
+        int cells = level.getCellCount();
+        this.corralStamp = new int[cells];
+        this.corralOf = new int[cells];
+        this.crateStamp = new int[cells];
+        this.allowed = new int[cells];
+        this.queue = new int[cells];
+        this.reachability = new Reachability(level);
+        this.childReachability = new Reachability(level);
+    }
+
+    /**
+     * This method looks for the PI-corral with the fewest pushes in a state.
+     *
+     * @param crateCells - Sorted cells of the crates
+     * @param playerCell - Cell of the player
+     * @param area - Fill of the area of the player in this state
+     * @return RESTRICTED if only the crates that isAllowed() returns true for need to be pushed, DEADLOCK if a
+     * PI-corral cannot be solved, NONE otherwise.
+     */
+    public int analyze(short[] crateCells, int playerCell, Reachability area) {
+        nextStamp();
+        for (short crate : crateCells) {
+            crateStamp[crate] = stamp;
+        }
+
+        int best = -1;
+        int bestPushes = Integer.MAX_VALUE;
+        int corrals = 0;
+        for (int cell = 0; cell < corralStamp.length; cell++) {
+            if (level.isWall(cell) || crateStamp[cell] == stamp || corralStamp[cell] == stamp
+                    || area.isReachable(cell)) {
+                continue;
+            }
+            int corral = corrals++;
+            boolean pending = label(cell, corral);
+            int pushes = pending ? countPushes(corral, crateCells, area) : -1;
+            if (pushes > 0 && pushes < bestPushes) {
+                best = corral;
+                bestPushes = pushes;
+            }
+        }
+        if (best < 0) {
+            return NONE;
+        }
+
+        short[] corralCrates = corralCrates(best, crateCells);
+        for (short crate : corralCrates) {
+            if (isBorder(crate, best, area)) {
+                allowed[crate] = stamp;
+            }
+        }
+        // A corral of every crate is the whole puzzle, searching it on its own would prove nothing.
+        if (corralCrates.length < crateCells.length && isDeadlock(best, corralCrates, playerCell)) {
+            return DEADLOCK;
+        }
+        return RESTRICTED;
+    }
+
+    // True if the crate belongs to the corral chosen by the last analyze() that returned RESTRICTED.
+    public boolean isAllowed(int crateCell) {
+        return allowed[crateCell] == stamp;
+    }
+
+    /**
+     * This is a helper function that floods a corral from one of its cells.
+     *
+     * @param start - Cell of the corral
+     * @param corral - Number of the corral
+     * @return True if the corral still has work to do: a free goal, or a crate next to it that is not on a goal.
+     */
+    private boolean label(int start, int corral) {
+        boolean pending = false;
+        int tail = 0;
+        corralStamp[start] = stamp;
+        corralOf[start] = corral;
+        queue[tail++] = start;
+        for (int head = 0; head < tail; head++) {
+            int cell = queue[head];
+            pending |= level.isGoal(cell);
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(cell, direction);
+                if (level.isWall(next)) {
+                    continue;
+                }
+                if (crateStamp[next] == stamp) {
+                    pending |= !level.isGoal(next);
+                } else if (corralStamp[next] != stamp) {
+                    corralStamp[next] = stamp;
+                    corralOf[next] = corral;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * This is a helper function that checks if a corral is a PI-corral.
+     *
+     * @param corral - Number of the corral
+     * @param crateCells - Sorted cells of the crates
+     * @param area - Fill of the area of the player
+     * @return The number of pushes of its border crates if it is a PI-corral with any, -1 otherwise.
+     */
+    private int countPushes(int corral, short[] crateCells, Reachability area) {
+        int pushes = 0;
+        for (short crate : crateCells) {
+            if (!isBorder(crate, corral, area)) {
+                continue;
+            }
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int target = level.neighbour(crate, direction);
+                int pusher = level.neighbour(crate, Level.opposite(direction));
+                if (level.isWall(target) || crateStamp[target] == stamp) {
+                    continue;
+                }
+                boolean inside = isInCorral(target, corral);
+                if (inside && !level.isWall(pusher) && !area.isReachable(pusher)) {
+                    // P: a push into the corral that the player cannot make.
+                    return -1;
+                }
+                if (!area.isReachable(pusher) || level.isDead(target)
+                        || freezeDetector.isDeadlock(crateCells, crate, target)) {
+                    continue;
+                }
+                if (!inside) {
+                    // I: a possible push that leaves the corral alone.
+                    return -1;
+                }
+                pushes++;
+            }
+        }
+        return pushes > 0 ? pushes : -1;
+    }
+
+    // A border crate touches the corral and the area of the player.
+    private boolean isBorder(int crate, int corral, Reachability area) {
+        boolean touchesCorral = false;
+        boolean touchesArea = false;
+        for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+            int next = level.neighbour(crate, direction);
+            touchesCorral |= isInCorral(next, corral);
+            touchesArea |= area.isReachable(next);
+        }
+        return touchesCorral && touchesArea;
+    }
+
+    private boolean isInCorral(int cell, int corral) {
+        return cell >= 0 && corralStamp[cell] == stamp && corralOf[cell] == corral;
+    }
+
+    // Crates next to the corral, its border and the ones inside it.
+    private short[] corralCrates(int corral, short[] crateCells) {
+        int count = 0;
+        short[] crates = new short[crateCells.length];
+        for (short crate : crateCells) {
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                if (isInCorral(level.neighbour(crate, direction), corral)) {
+                    crates[count++] = crate;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(crates, count);
+    }
+
+    /**
+     * This is a helper function that searches the pushes of the crates of a corral on a map without the other
+     * crates, until they are all on goals or one of them leaves the corral.
+     *
+     * @param corral - Number of the corral
+     * @param crateCells - Sorted cells of the crates of the corral
+     * @param playerCell - Cell of the player
+     * @return True if the corral can be proven unsolvable within DEADLOCK_NODES states.
+     */
+    private boolean isDeadlock(int corral, short[] crateCells, int playerCell) {
+        int start = reachability.fill(playerCell, crateCells);
+        char[] key = new char[crateCells.length + 1];
+        key[0] = (char) start;
+        for (int i = 0; i < crateCells.length; i++) {
+            key[i + 1] = (char) crateCells[i];
+        }
+        String cacheKey = new String(key);
+        Boolean cached = deadlocks.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        // The corral is the area and its crates, a crate anywhere else has left it.
+        boolean[] inside = new boolean[level.getCellCount()];
+        for (int cell = 0; cell < inside.length; cell++) {
+            inside[cell] = isInCorral(cell, corral);
+        }
+        for (short crate : crateCells) {
+            inside[crate] = true;
+        }
+
+        boolean deadlock = search(crateCells, start, inside);
+        deadlocks.put(cacheKey, deadlock);
+        return deadlock;
+    }
+
+    private boolean search(short[] crateCells, int start, boolean[] inside) {
+        ZobristTable zobrist = level.getZobrist();
+        int crateCount = crateCells.length;
+        arena.clear(crateCount);
+        short[] crates = new short[crateCount];
+        short[] child = new short[crateCount];
+        int tail = 0;
+        open[tail++] = arena.add(NodeArena.NONE, 0, 0, start, crateCells, NodeArena.NONE,
+                zobrist.hash(start, crateCells));
+
+        for (int head = 0; head < tail; head++) {
+            if (head >= DEADLOCK_NODES) {
+                return false;
+            }
+            int node = open[head];
+            arena.copyCrates(node, crates);
+            reachability.fill(arena.getPlayerCell(node), crates);
+            for (short crate : crates) {
+                for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                    int target = level.neighbour(crate, direction);
+                    if (!reachability.isReachable(level.neighbour(crate, Level.opposite(direction)))
+                            || level.isWall(target) || Arrays.binarySearch(crates, (short) target) >= 0
+                            || level.isDead(target) || freezeDetector.isDeadlock(crates, crate, target)) {
+                        continue;
+                    }
+                    if (!inside[target]) {
+                        return false;
+                    }
+                    System.arraycopy(crates, 0, child, 0, crateCount);
+                    SokobanState.shiftCrate(child, crate, target);
+                    if (isSolved(child)) {
+                        return false;
+                    }
+
+                    int playerCell = childReachability.fill(crate, child);
+                    long hash = zobrist.hash(playerCell, child);
+                    if (arena.find(hash, playerCell, child) != NodeArena.NONE) {
+                        continue;
+                    }
+                    if (tail == open.length) {
+                        open = Arrays.copyOf(open, tail * 2);
+                    }
+                    open[tail++] = arena.add(node, direction, 0, playerCell, child, NodeArena.NONE, hash);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isSolved(short[] crateCells) {
+        for (short crate : crateCells) {
+            if (!level.isGoal(crate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(corralStamp, 0);
+            Arrays.fill(crateStamp, 0);
+            Arrays.fill(allowed, 0);
+            stamp = 1;
+        }
+    }
+}
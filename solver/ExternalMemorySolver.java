@@ -0,0 +1,561 @@
+package solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Breadth-first push search that keeps its states on disk instead of the heap, for levels with more states than
+ * fit into memory.
+ *
+ * A state is written as a fixed size record, the normalized player cell followed by the sorted crate cells, and
+ * records are compared cell by cell. The search goes layer by layer, every layer holds the states that are one push
+ * further from the start than the last. The successors of a layer are collected in a buffer of a fixed number of
+ * states, which is sorted and written to disk as a run whenever it is full. The runs are then merged, and the merge
+ * drops the duplicates among them and every state of the visited file, which holds all earlier layers in sorted
+ * order. What is left is the next layer, and the visited file is merged with it into a new one. So duplicates are
+ * only found by reading sorted files side by side, there are no random lookups, and the heap holds the buffer and
+ * a few file buffers however many states there are.
+ *
+ * The layers stay on disk until the search is over. Once a successor is a goal state, the solution is found again
+ * backwards: every layer is scanned for a state that has the last found state as a successor. The search is over
+ * pushes like BFS is, so the solution has the fewest pushes there are.
+ */
+public class ExternalMemorySolver {
+
+    public static final int DEFAULT_BUFFER_STATES = 1 << 20;
+
+    // Bytes of the buffer of every file that is written or merged.
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    private final Path directory;
+    private final int bufferStates;
+
+    // Set from another thread to stop the search, it is checked before every expansion.
+    private volatile boolean cancelled = false;
+    private long expandedNodes;
+    private int layers;
+
+    // The level that is being solved and its buffers.
+    private Level level;
+    private FreezeDetector freezeDetector;
+    private Reachability reachability;
+    private Reachability childReachability;
+    private int recordLength;
+
+    // Successors of the layer that is expanded, recordLength shorts per state.
+    private short[] buffer;
+    private int buffered;
+    private int[] order;
+
+    public ExternalMemorySolver() {
+        this(Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_BUFFER_STATES);
+    }
+
+    /**
+     * @param directory - Directory to write the layers and runs to, each search works in a new directory in it
+     * @param bufferStates - Number of states sorted in memory before they are written as a run
+     */
+    public ExternalMemorySolver(Path directory, int bufferStates) {
+        if (bufferStates < 1) {
+            throw new IllegalArgumentException("The buffer needs room for at least one state");
+        }
+        this.directory = directory;
+        this.bufferStates = bufferStates;
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        Level level;
+        try {
+            level = new Level(width, height, mapData);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        try {
+            return solve(level, itemsData);
+        } catch (UncheckedIOException ex) {
+            // The states could not be written or read, the puzzle is left unsolved like a cancelled one.
+            return null;
+        }
+    }
+
+    /**
+     * This method searches the puzzle layer by layer until a layer holds a goal state or no new state.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param itemsData - Player and crate positions
+     * @return Move sequence with the fewest pushes, or null if there is none or the search was cancelled, by cancel()
+     * or by interrupting the thread, see isCancelled().
+     * @throws UncheckedIOException if the states cannot be written or read
+     */
+    public String solve(Level level, char[][] itemsData) {
+        this.level = level;
+        cancelled = false;
+        this.freezeDetector = new FreezeDetector(level);
+        this.reachability = new Reachability(level);
+        this.childReachability = new Reachability(level);
+        expandedNodes = 0;
+        layers = 0;
+
+        SuccessorGenerator generator = new SuccessorGenerator(level, SolverConfig.aStar(true));
+        SokobanState initialState = generator.initialState(itemsData);
+        if (initialState == null) {
+            return null;
+        }
+        short[] start = record(initialState.getPlayerCell(), initialState.getCrateCells());
+        recordLength = start.length;
+        buffer = new short[bufferStates * recordLength];
+        order = new int[bufferStates];
+
+        Path work = null;
+        try {
+            work = Files.createTempDirectory(Files.createDirectories(directory), "sokobot-external");
+            List<short[]> path = search(work, start);
+            if (path == null) {
+                return null;
+            }
+            List<short[]> configurations = new ArrayList<>();
+            for (short[] state : path) {
+                configurations.add(Arrays.copyOfRange(state, 1, state.length));
+            }
+            return generator.getPushMoves(generator.getInitialPlayerCell(), configurations);
+        } catch (ClosedByInterruptException | InterruptedIOException ex) {
+            // An interrupt closes the file that was being read or written, it is a cancel and not a failure.
+            cancelled = true;
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            buffer = null;
+            order = null;
+            if (work != null) {
+                delete(work);
+            }
+        }
+    }
+
+    /**
+     * This is a helper function that runs the layered search in a work directory.
+     *
+     * @param work - Directory for the files of this search
+     * @param start - Record of the initial state
+     * @return The records from the initial state to a goal state, or null if there is none or the search was
+     * cancelled.
+     */
+    private List<short[]> search(Path work, short[] start) throws IOException {
+        List<Path> layerFiles = new ArrayList<>();
+        layerFiles.add(work.resolve("layer-0"));
+        try (RunWriter writer = new RunWriter(layerFiles.get(0))) {
+            writer.write(start);
+        }
+        if (isGoal(start)) {
+            return Collections.singletonList(start);
+        }
+        Path visited = layerFiles.get(0);
+
+        short[] goal = null;
+        while (goal == null) {
+            if (cancelled) {
+                return null;
+            }
+            // The successors of the last layer, written as sorted runs.
+            List<Path> runs = new ArrayList<>();
+            buffered = 0;
+            short[] state = new short[recordLength];
+            try (RunReader reader = new RunReader(layerFiles.get(layers), recordLength)) {
+                while (goal == null && reader.next(state)) {
+                    if (cancelled) {
+                        return null;
+                    }
+                    expandedNodes++;
+                    goal = expand(state, null, work, runs);
+                }
+            }
+            if (goal != null) {
+                break;
+            }
+            if (buffered > 0) {
+                runs.add(writeRun(work.resolve("run-" + runs.size())));
+            }
+
+            Path layer = work.resolve("layer-" + (layers + 1));
+            long states = merge(runs, visited, layer);
+            for (Path run : runs) {
+                Files.delete(run);
+            }
+            if (states == 0) {
+                return null;
+            }
+            layers++;
+            layerFiles.add(layer);
+
+            Path nextVisited = work.resolve("visited-" + layers);
+            merge(Arrays.asList(visited, layer), null, nextVisited);
+            if (!visited.equals(layerFiles.get(0))) {
+                Files.delete(visited);
+            }
+            visited = nextVisited;
+        }
+
+        // Every layer is scanned for a state that leads to the state found in the layer after it.
+        List<short[]> path = new ArrayList<>();
+        path.add(goal);
+        short[] state = new short[recordLength];
+        for (int layer = layers; layer >= 0; layer--) {
+            try (RunReader reader = new RunReader(layerFiles.get(layer), recordLength)) {
+                while (reader.next(state)) {
+                    if (expand(state, path.get(path.size() - 1), null, null) != null) {
+                        path.add(state.clone());
+                        break;
+                    }
+                }
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * This is a helper function that generates the pushes of a state. Pushes onto dead tiles or into a freeze are
+     * left out like in SuccessorGenerator.
+     *
+     * @param state - Record of the state
+     * @param wanted - Record of a successor to look for, null to add the successors to the buffer instead
+     * @param work - Directory to write a full buffer to as a run, only used without wanted
+     * @param runs - Runs written so far, only used without wanted
+     * @return The wanted successor if it was found, a successor that is a goal state, or null.
+     */
+    private short[] expand(short[] state, short[] wanted, Path work, List<Path> runs) throws IOException {
+        short[] crateCells = Arrays.copyOfRange(state, 1, recordLength);
+        short[] child = new short[recordLength];
+        reachability.fill(state[0], crateCells);
+
+        for (short crateCell : crateCells) {
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int target = level.neighbour(crateCell, direction);
+                if (!reachability.isReachable(level.neighbour(crateCell, Level.opposite(direction)))
+                        || level.isWall(target) || Arrays.binarySearch(crateCells, (short) target) >= 0
+                        || level.isDead(target) || freezeDetector.isDeadlock(crateCells, crateCell, target)) {
+                    continue;
+                }
+
+                System.arraycopy(crateCells, 0, child, 1, crateCells.length);
+                short[] childCrates = Arrays.copyOfRange(child, 1, recordLength);
+                SokobanState.shiftCrate(childCrates, crateCell, target);
+                System.arraycopy(childCrates, 0, child, 1, childCrates.length);
+                // After the push the player stands where the crate was, normalized to the area it can reach.
+                child[0] = (short) childReachability.fill(crateCell, childCrates);
+
+                if (wanted != null) {
+                    if (Arrays.equals(child, wanted)) {
+                        return wanted;
+                    }
+                    continue;
+                }
+                if (isGoal(child)) {
+                    return child;
+                }
+                System.arraycopy(child, 0, buffer, buffered * recordLength, recordLength);
+                if (++buffered == bufferStates) {
+                    runs.add(writeRun(work.resolve("run-" + runs.size())));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This is a helper function that sorts the buffer and writes it as a run without duplicates, then empties it.
+     *
+     * @param file - File of the run
+     * @return The file.
+     */
+    private Path writeRun(Path file) throws IOException {
+        for (int i = 0; i < buffered; i++) {
+            order[i] = i;
+        }
+        sort(0, buffered - 1);
+        try (RunWriter writer = new RunWriter(file)) {
+            short[] record = new short[recordLength];
+            short[] last = null;
+            for (int i = 0; i < buffered; i++) {
+                System.arraycopy(buffer, order[i] * recordLength, record, 0, recordLength);
+                if (last == null || !Arrays.equals(record, last)) {
+                    writer.write(record);
+                    last = record.clone();
+                }
+            }
+        }
+        buffered = 0;
+        return file;
+    }
+
+    // Quicksort of the buffered states by their index in order.
+    private void sort(int low, int high) {
+        while (low < high) {
+            int pivot = order[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compareBuffered(order[i], pivot) < 0) {
+                    i++;
+                }
+                while (compareBuffered(order[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            // The smaller half is sorted by recursion and the larger one by the loop, which bounds the stack.
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    private int compareBuffered(int a, int b) {
+        int offsetA = a * recordLength;
+        int offsetB = b * recordLength;
+        for (int i = 0; i < recordLength; i++) {
+            int difference = buffer[offsetA + i] - buffer[offsetB + i];
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This is a helper function that merges sorted files into one, without duplicates and without the records of
+     * another sorted file.
+     *
+     * @param inputs - Sorted files to merge
+     * @param subtract - Sorted file of records to leave out, null for none
+     * @param output - File to write the merged records to
+     * @return The number of records written.
+     */
+    private long merge(List<Path> inputs, Path subtract, Path output) throws IOException {
+        // The readers are ordered by the record they are at, so the smallest record of all runs is on top.
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(Math.max(1, inputs.size()),
+                (a, b) -> compare(a.current, b.current));
+        List<RunReader> opened = new ArrayList<>();
+        try (RunWriter writer = new RunWriter(output)) {
+            for (Path input : inputs) {
+                RunReader reader = new RunReader(input, recordLength);
+                opened.add(reader);
+                if (reader.advance()) {
+                    readers.add(reader);
+                }
+            }
+            RunReader excluded = null;
+            if (subtract != null) {
+                excluded = new RunReader(subtract, recordLength);
+                opened.add(excluded);
+                if (!excluded.advance()) {
+                    excluded = null;
+                }
+            }
+
+            long written = 0;
+            short[] last = null;
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.poll();
+                short[] record = reader.current;
+                boolean duplicate = last != null && compare(record, last) == 0;
+                while (!duplicate && excluded != null && compare(excluded.current, record) < 0) {
+                    if (!excluded.advance()) {
+                        excluded = null;
+                    }
+                }
+                if (!duplicate && (excluded == null || compare(excluded.current, record) != 0)) {
+                    writer.write(record);
+                    written++;
+                }
+                last = last == null ? record.clone() : copy(record, last);
+                if (reader.advance()) {
+                    readers.add(reader);
+                }
+            }
+            return written;
+        } finally {
+            for (RunReader reader : opened) {
+                reader.close();
+            }
+        }
+    }
+
+    private static short[] copy(short[] from, short[] to) {
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+    }
+
+    private static int compare(short[] a, short[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int difference = a[i] - b[i];
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private static short[] record(int playerCell, short[] crateCells) {
+        short[] record = new short[crateCells.length + 1];
+        record[0] = (short) playerCell;
+        System.arraycopy(crateCells, 0, record, 1, crateCells.length);
+        return record;
+    }
+
+    // True if every goal has a crate on it, like SuccessorGenerator.isGoal().
+    private boolean isGoal(short[] record) {
+        for (int goal : level.getGoalCells()) {
+            if (Arrays.binarySearch(record, 1, recordLength, (short) goal) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void delete(Path work) {
+        try (Stream<Path> files = Files.list(work)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(work);
+        } catch (IOException ex) {
+            // Files that are left behind only take disk space until the temporary directory is cleaned.
+        }
+    }
+
+    /**
+     * This method stops a search that is running on another thread. solve() then returns null.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // True if the last solve() was stopped by cancel() or an interrupt.
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Number of states expanded in the last solve().
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    // Number of layers after the initial state the last solve() wrote.
+    public int getLayers() {
+        return layers;
+    }
+
+    /**
+     * Sequential writer of records with a large buffer.
+     */
+    private static class RunWriter implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+        RunWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(short[] record) throws IOException {
+            if (buffer.remaining() < 2 * record.length) {
+                flush();
+            }
+            for (short cell : record) {
+                buffer.putShort(cell);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Sequential reader of records with a buffer. A merge keeps the record the reader is at in current.
+     */
+    private static class RunReader implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        private final int recordLength;
+        // Record the reader is at, see advance().
+        final short[] current;
+
+        RunReader(Path file, int recordLength) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.recordLength = recordLength;
+            this.current = new short[recordLength];
+            buffer.flip();
+        }
+
+        boolean next(short[] record) throws IOException {
+            if (buffer.remaining() < 2 * recordLength) {
+                buffer.compact();
+                while (buffer.position() < 2 * recordLength && channel.read(buffer) >= 0) {
+                    // Reads until a whole record is buffered or the file ends.
+                }
+                buffer.flip();
+                if (buffer.remaining() < 2 * recordLength) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < recordLength; i++) {
+                record[i] = buffer.getShort();
+            }
+            return true;
+        }
+
+        // Moves current on to the next record, false at the end of the file.
+        boolean advance() throws IOException {
+            return next(current);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
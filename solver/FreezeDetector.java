@@ -0,0 +1,139 @@
+package solver;
+
+/**
+ * Detects freeze deadlocks, crates that can no longer be moved on either axis while not all of them are on goals.
+ *
+ * A crate is blocked on an axis if there is a wall on one side, dead tiles on both sides, or a frozen crate on one
+ * side. The last rule is recursive, and the crate being checked counts as a wall while its neighbours are checked
+ * so that two crates next to each other do not loop forever.
+ *
+ * Only the crates in a small window around the pushed crate are looked at. Leaving crates out can only make the
+ * check miss a deadlock, never report a wrong one, and it means the whole result is decided by the pushed cell and
+ * the window contents. Those are stored in a bounded direct-mapped cache, so a pattern that comes up again is a
+ * single lookup.
+ */
+public class FreezeDetector {
+
+    private static final int RADIUS = 3;
+    private static final int SIZE = 2 * RADIUS + 1; // 7x7 window, 49 bits of a long
+    private static final int CACHE_SIZE = 1 << 16;
+
+    private final Level level;
+    private final int width;
+
+    // cacheCells holds the pushed cell + 1, so 0 marks an empty slot.
+    private final long[] cacheMasks = new long[CACHE_SIZE];
+    private final int[] cacheCells = new int[CACHE_SIZE];
+    private final boolean[] cacheResults = new boolean[CACHE_SIZE];
+
+    // State of the check that is running, as bits of the window.
+    private int centerX;
+    private int centerY;
+    private long crates;
+    private long visiting;
+    private long frozen;
+
+    public FreezeDetector(Level level) {
+        this.level = level;
+        this.width = level.getWidth();
+    }
+
+    /**
+     * This method checks if a push freezes crates off their goals.
+     *
+     * @param crateCells - Cells of the crates before the push
+     * @param from - Cell of the pushed crate before the push
+     * @param to - Cell of the pushed crate after the push
+     * @return True if the push results into a freeze deadlock, false otherwise.
+     */
+    public boolean isDeadlock(short[] crateCells, int from, int to) {
+        centerX = to % width;
+        centerY = to / width;
+
+        long mask = 1L << bit(to);
+        for (short crate : crateCells) {
+            int bit = bit(crate);
+            if (crate != from && bit >= 0) {
+                mask |= 1L << bit;
+            }
+        }
+
+        long key = mask * 0x9E3779B97F4A7C15L + to;
+        int slot = (int) (key ^ (key >>> 32)) & (CACHE_SIZE - 1);
+        if (cacheCells[slot] == to + 1 && cacheMasks[slot] == mask) {
+            return cacheResults[slot];
+        }
+
+        crates = mask;
+        visiting = 0;
+        frozen = 0;
+        boolean deadlock = isFrozen(to) && hasFrozenCrateOffGoal();
+
+        cacheCells[slot] = to + 1;
+        cacheMasks[slot] = mask;
+        cacheResults[slot] = deadlock;
+        return deadlock;
+    }
+
+    private boolean isFrozen(int cell) {
+        long bit = 1L << bit(cell);
+        long frozenBefore = frozen;
+
+        visiting |= bit;
+        boolean result = isBlocked(cell, Level.LEFT, Level.RIGHT) && isBlocked(cell, Level.UP, Level.DOWN);
+        visiting &= ~bit;
+
+        // Crates found frozen below this one assumed it could not move. If it can, they do not count.
+        if (result) {
+            frozen |= bit;
+        } else {
+            frozen = frozenBefore;
+        }
+        return result;
+    }
+
+    private boolean isBlocked(int cell, int direction, int otherDirection) {
+        int side = level.neighbour(cell, direction);
+        int otherSide = level.neighbour(cell, otherDirection);
+        if (level.isWall(side) || level.isWall(otherSide)) {
+            return true;
+        }
+        if (level.isDead(side) && level.isDead(otherSide)) {
+            return true;
+        }
+        return isBlockingCrate(side) || isBlockingCrate(otherSide);
+    }
+
+    private boolean isBlockingCrate(int cell) {
+        int bit = bit(cell);
+        if (bit < 0 || (crates & (1L << bit)) == 0) {
+            return false;
+        }
+        // A crate that is already being checked is treated as a wall.
+        if ((visiting & (1L << bit)) != 0) {
+            return true;
+        }
+        return isFrozen(cell);
+    }
+
+    private boolean hasFrozenCrateOffGoal() {
+        for (long bits = frozen; bits != 0; bits &= bits - 1) {
+            int bit = Long.numberOfTrailingZeros(bits);
+            int cell = (centerY + bit / SIZE - RADIUS) * width + centerX + bit % SIZE - RADIUS;
+            if (!level.isGoal(cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bit of a cell in the window around the pushed crate, -1 if the cell is outside of it.
+    private int bit(int cell) {
+        int dx = cell % width - centerX + RADIUS;
+        int dy = cell / width - centerY + RADIUS;
+        if (dx < 0 || dx >= SIZE || dy < 0 || dy >= SIZE) {
+            return -1;
+        }
+        return dy * SIZE + dx;
+    }
+}
@@ -0,0 +1,276 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed A* (HDA*) over pushes, on several threads.
+ *
+ * Every state has exactly one owner, picked from the high bits of its Zobrist hash. Only the owner keeps the state
+ * in its open list and duplicate table, so there is no shared closed set and no global lock. A worker that generates
+ * a state owned by someone else collects it in a per-owner batch and hands the full batch over through the owner's
+ * lock-free inbox (a ConcurrentLinkedQueue, which is safe for many producers and one consumer).
+ *
+ * The first solution found is only an incumbent. Workers keep going, and drop every state whose A* score is not
+ * below the incumbent's length, until all of them are idle and no batch is in flight. The incumbent is then the
+ * shortest solution in pushes.
+ *
+ * Termination is detected with one counter of outstanding work: every worker that is not idle counts one, and so
+ * does every batch that was sent and is not yet in the open list of its owner. A worker only turns busy again by
+ * receiving a batch, and it counts itself before that batch stops counting, so once the counter reads zero no work
+ * is left anywhere and none can come back.
+ *
+ * A worker without work spins briefly and then parks, so idle workers do not hold a core for the rest of a long
+ * search. Handing over a batch unparks its owner, and so does the end of the search. All workers read the same
+ * PatternDatabase, which is only read, so it is loaded once per solve.
+ */
+public class HdaStarSolver {
+
+    private static final int BATCH_SIZE = 64;
+    // Expansions between flushing batches that are not full yet, so that other workers do not starve.
+    private static final int FLUSH_INTERVAL = 16;
+    // Empty polls of an idle worker before it parks, and the longest it parks before it looks again.
+    private static final int IDLE_SPINS = 64;
+    private static final long IDLE_PARK_NANOS = 1000000L;
+
+    private final int threads;
+    private final AtomicLong expanded = new AtomicLong();
+
+    private volatile boolean done;
+    private volatile SokobanState incumbent;
+    private Worker[] workers;
+    // Workers that are not idle plus batches that are not yet in their owner's open list.
+    private final AtomicLong outstandingWork = new AtomicLong();
+
+    public HdaStarSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public HdaStarSolver(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("HDA* needs at least one worker thread");
+        }
+        this.threads = threads;
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        Level level;
+        try {
+            level = new Level(width, height, mapData);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        return solve(level, itemsData);
+    }
+
+    /**
+     * This method runs the workers on a compiled level until the search space is exhausted below the incumbent.
+     *
+     * @param level - Compiled map of the puzzle, shared by all workers
+     * @param itemsData - Player and crate positions
+     * @return Move sequence with the fewest pushes, or null if the puzzle has no solution or the search was cancelled.
+     */
+    public String solve(Level level, char[][] itemsData) {
+        done = false;
+        incumbent = null;
+        expanded.set(0);
+        // Every worker starts busy, the others find out they have no work when their open list is empty.
+        outstandingWork.set(threads);
+
+        SolverConfig config = SolverConfig.aStar(true).withPatternDatabase();
+        PatternDatabase patterns = PatternDatabase.forLevel(level);
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i, new SuccessorGenerator(level, config, patterns));
+        }
+
+        // The generator of the first worker builds the initial state, and the moves once the workers are done.
+        SuccessorGenerator generator = workers[0].generator;
+        SokobanState initialState = generator.initialState(itemsData);
+        if (initialState == null) {
+            return null;
+        }
+        workers[owner(initialState)].open.push(initialState);
+
+        List<Thread> running = new ArrayList<>();
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "hda-worker-" + worker.id);
+            thread.setDaemon(true);
+            worker.thread = thread;
+            running.add(thread);
+        }
+        for (Thread thread : running) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : running) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        SokobanState solution = incumbent;
+        return solution == null ? null : generator.getMoves(solution);
+    }
+
+    /**
+     * This method stops the workers, solve() then returns the incumbent found so far.
+     */
+    public void cancel() {
+        done = true;
+        wakeAll();
+    }
+
+    // Unparks every worker, so that they see the search is done.
+    private void wakeAll() {
+        Worker[] current = workers;
+        if (current != null) {
+            for (Worker worker : current) {
+                LockSupport.unpark(worker.thread);
+            }
+        }
+    }
+
+    // Number of states expanded by all workers in the last solve().
+    public long getExpandedNodes() {
+        return expanded.get();
+    }
+
+    private int owner(SokobanState state) {
+        return (int) ((state.getHash() >>> 33) % threads);
+    }
+
+    private void offerIncumbent(SokobanState state) {
+        synchronized (this) {
+            if (incumbent == null || state.getMoves() < incumbent.getMoves()) {
+                incumbent = state;
+            }
+        }
+    }
+
+    // The A* score of a state, no state below the incumbent can be dropped.
+    private boolean isPruned(SokobanState state) {
+        SokobanState best = incumbent;
+        return best != null && state.getScore() >= best.getMoves();
+    }
+
+    private class Worker implements Runnable {
+
+        private final int id;
+        private final SuccessorGenerator generator;
+        // The open list also remembers the cheapest path to every state it has seen, which is the duplicate check.
+        private final OpenList open = new OpenList();
+        private final ConcurrentLinkedQueue<SokobanState[]> inbox = new ConcurrentLinkedQueue<>();
+        private final SokobanState[][] outbox;
+        private final int[] outboxSize;
+        private boolean idle = false;
+        private volatile Thread thread;
+
+        Worker(int id, SuccessorGenerator generator) {
+            this.id = id;
+            this.generator = generator;
+            this.outbox = new SokobanState[threads][BATCH_SIZE];
+            this.outboxSize = new int[threads];
+        }
+
+        @Override
+        public void run() {
+            long expansions = 0;
+            int emptyPolls = 0;
+            while (!done) {
+                receive();
+
+                SokobanState frontier = open.pop();
+                if (frontier == null) {
+                    flushAll();
+                    if (!idle) {
+                        idle = true;
+                        outstandingWork.decrementAndGet();
+                    }
+                    // Everyone is out of work and nothing is on its way, so the search space is exhausted.
+                    if (outstandingWork.get() == 0) {
+                        done = true;
+                        wakeAll();
+                    } else if (++emptyPolls < IDLE_SPINS) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    continue;
+                }
+                emptyPolls = 0;
+
+                if (isPruned(frontier)) {
+                    continue;
+                }
+                if (generator.isGoal(frontier)) {
+                    offerIncumbent(frontier);
+                    continue;
+                }
+
+                for (SokobanState state : generator.generate(frontier, null)) {
+                    if (!isPruned(state)) {
+                        send(state);
+                    }
+                }
+                if (++expansions % FLUSH_INTERVAL == 0) {
+                    flushAll();
+                }
+            }
+            expanded.addAndGet(expansions);
+        }
+
+        private void receive() {
+            SokobanState[] batch;
+            while ((batch = inbox.poll()) != null) {
+                // Count as busy before the batch stops counting, so the outstanding work never passes zero.
+                if (idle) {
+                    idle = false;
+                    outstandingWork.incrementAndGet();
+                }
+                for (SokobanState state : batch) {
+                    if (!isPruned(state)) {
+                        open.push(state);
+                    }
+                }
+                outstandingWork.decrementAndGet();
+            }
+        }
+
+        private void send(SokobanState state) {
+            int owner = owner(state);
+            if (owner == id) {
+                open.push(state);
+                return;
+            }
+            outbox[owner][outboxSize[owner]++] = state;
+            if (outboxSize[owner] == BATCH_SIZE) {
+                flush(owner);
+            }
+        }
+
+        private void flushAll() {
+            for (int owner = 0; owner < threads; owner++) {
+                if (outboxSize[owner] > 0) {
+                    flush(owner);
+                }
+            }
+        }
+
+        private void flush(int owner) {
+            outstandingWork.incrementAndGet();
+            workers[owner].inbox.offer(Arrays.copyOf(outbox[owner], outboxSize[owner]));
+            LockSupport.unpark(workers[owner].thread);
+            Arrays.fill(outbox[owner], 0, outboxSize[owner], null);
+            outboxSize[owner] = 0;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Admissible estimate of the pushes that are still needed, from a minimum cost matching of crates to targets.
+ *
+ * The cost of putting a crate on a target is its push distance from the precomputed tables of the Level. The
+ * matching is solved with the Hungarian method, and the estimate is the value of its dual (the sum of the row and
+ * column potentials), which never exceeds the cost of the best matching, so it stays a lower bound.
+ *
+ * A push only moves one crate. So instead of solving every child from scratch, prepare() solves the parent once,
+ * and estimateChild() starts from the parent's potentials, drops the moved crate from the matching and augments
+ * it back in, which is a single O(n^2) step. With more crates than MATCHING_LIMIT, only the sum of the distance of
+ * every crate to its closest target is used, which a child updates in O(1).
+ *
+ * With a PatternDatabase, the estimate is the larger of the matching and the pair costs of the database. The
+ * matching knows that every crate needs its own goal, the pairs know how two crates get in each other's way.
+ *
+ * A puzzle is solved once every target has a crate. With fewer crates than targets that never happens, so the
+ * estimate is INFINITE. With more crates than targets, the crates that end up on no target need not move at all,
+ * so the estimate is the sum over the targets of the distance of the closest crate, computed for every child. A
+ * level without targets is solved from the start and always estimates 0.
+ */
+public class Heuristic {
+
+    public static final int INFINITE = Level.UNREACHABLE;
+
+    private static final int MATCHING_LIMIT = 48;
+
+    // distances[target][cell]
+    private final int[][] distances;
+    private final int targets;
+    private final int[] closestDistance;
+    // Pair costs of the goals of the level, null if they are not used.
+    private final PatternDatabase patterns;
+    private short[] childCrates = new short[0];
+
+    // The parent solved by prepare().
+    private short[] parentCrates;
+    private int parentSum;
+    private int parentEstimate;
+    private boolean matching;
+    // More crates than targets, see goalSum().
+    private boolean surplus;
+    private int[] parentU = new int[0];
+    private int[] parentV;
+    private int[] parentMatch;
+
+    // Hungarian method, rows are crates and columns are targets, both counted from 1.
+    private int[] rowCells = new int[1];
+    private int[] u = new int[1];
+    private final int[] v;
+    private final int[] match;
+    private final int[] way;
+    private final int[] minimum;
+    private final boolean[] used;
+
+    public Heuristic(Level level) {
+        this(level.getGoalDistances(), null);
+    }
+
+    /**
+     * @param level - Level whose goals are the targets
+     * @param patterns - Pattern database of the level, may be null
+     */
+    public Heuristic(Level level, PatternDatabase patterns) {
+        this(level.getGoalDistances(), patterns);
+    }
+
+    /**
+     * @param distances - Push distance of every cell to every target, distances[target][cell]
+     */
+    public Heuristic(int[][] distances) {
+        this(distances, null);
+    }
+
+    private Heuristic(int[][] distances, PatternDatabase patterns) {
+        this.distances = distances;
+        this.patterns = patterns;
+        this.targets = distances.length;
+        this.closestDistance = new int[targets == 0 ? 0 : distances[0].length];
+        Arrays.fill(closestDistance, INFINITE);
+        for (int[] targetDistances : distances) {
+            for (int cell = 0; cell < closestDistance.length; cell++) {
+                closestDistance[cell] = Math.min(closestDistance[cell], targetDistances[cell]);
+            }
+        }
+
+        this.parentV = new int[targets + 1];
+        this.parentMatch = new int[targets + 1];
+        this.v = new int[targets + 1];
+        this.match = new int[targets + 1];
+        this.way = new int[targets + 1];
+        this.minimum = new int[targets + 1];
+        this.used = new boolean[targets + 1];
+    }
+
+    /**
+     * This method calculates the estimate of a configuration from scratch.
+     *
+     * @param crateCells - Sorted cells of the crates
+     * @return The estimated pushes, or INFINITE if the crates cannot all reach a target.
+     */
+    public int estimate(short[] crateCells) {
+        prepare(crateCells);
+        return parentEstimate;
+    }
+
+    /**
+     * This method solves the parent before its children are estimated with estimateChild().
+     *
+     * @param crateCells - Sorted cells of the crates of the parent
+     */
+    public void prepare(short[] crateCells) {
+        parentCrates = crateCells;
+        int rows = crateCells.length;
+        surplus = rows > targets;
+        if (rows != targets) {
+            matching = false;
+            parentSum = surplus ? goalSum(crateCells) : INFINITE;
+            parentEstimate = parentSum;
+            return;
+        }
+
+        parentSum = 0;
+        for (short crate : crateCells) {
+            parentSum = Math.min(INFINITE, parentSum + closestDistance[crate]);
+        }
+        matching = rows <= MATCHING_LIMIT && parentSum < INFINITE;
+        if (!matching) {
+            parentEstimate = withPatterns(parentSum, crateCells, -1);
+            return;
+        }
+
+        if (u.length != rows + 1) {
+            u = new int[rows + 1];
+            rowCells = new int[rows + 1];
+            parentU = new int[rows + 1];
+        }
+        Arrays.fill(u, 0);
+        Arrays.fill(v, 0);
+        Arrays.fill(match, 0);
+        for (int i = 1; i <= rows; i++) {
+            rowCells[i] = crateCells[i - 1];
+            augment(i);
+        }
+
+        System.arraycopy(u, 0, parentU, 0, u.length);
+        System.arraycopy(v, 0, parentV, 0, v.length);
+        System.arraycopy(match, 0, parentMatch, 0, match.length);
+        parentEstimate = withPatterns(Math.min(INFINITE, Math.max(parentSum, dual())), crateCells, -1);
+    }
+
+    /**
+     * This method estimates a child of the prepared parent, where one crate has been moved.
+     *
+     * @param from - Cell of the moved crate in the parent, -1 if no crate was moved
+     * @param to - Cell of the moved crate in the child
+     * @return The estimated pushes, or INFINITE if the crates cannot all reach a target.
+     */
+    public int estimateChild(int from, int to) {
+        if (from < 0 || parentCrates.length < targets) {
+            return parentEstimate;
+        }
+        if (surplus) {
+            return goalSum(childCrates(from, to));
+        }
+        if (closestDistance[to] == INFINITE) {
+            return INFINITE;
+        }
+
+        int sum = Math.min(INFINITE, parentSum - closestDistance[from] + closestDistance[to]);
+        if (!matching) {
+            return childWithPatterns(sum, from, to);
+        }
+
+        System.arraycopy(parentU, 0, u, 0, u.length);
+        System.arraycopy(parentV, 0, v, 0, v.length);
+        System.arraycopy(parentMatch, 0, match, 0, match.length);
+
+        // Take the crate out of the matching, move it, and make its potential feasible again before augmenting.
+        int row = Arrays.binarySearch(parentCrates, (short) from) + 1;
+        for (int j = 1; j <= targets; j++) {
+            if (match[j] == row) {
+                match[j] = 0;
+            }
+        }
+        rowCells[row] = to;
+        int potential = Integer.MAX_VALUE;
+        for (int j = 1; j <= targets; j++) {
+            potential = Math.min(potential, cost(row, j) - v[j]);
+        }
+        u[row] = potential;
+        augment(row);
+        rowCells[row] = from;
+
+        return childWithPatterns(Math.min(INFINITE, Math.max(sum, dual())), from, to);
+    }
+
+    /**
+     * This is a helper function that raises an estimate to the bound of the pattern database, if there is one.
+     *
+     * @param estimate - Estimate from the matching
+     * @param crateCells - Sorted cells of the crates
+     * @param playerCell - Cell of the player, -1 if it is not known
+     * @return The larger of the two bounds.
+     */
+    private int withPatterns(int estimate, short[] crateCells, int playerCell) {
+        if (patterns == null || estimate >= INFINITE) {
+            return estimate;
+        }
+        return Math.max(estimate, patterns.estimate(crateCells, playerCell));
+    }
+
+    // The child is built in a scratch array, after the push the player stands where the crate was.
+    private int childWithPatterns(int estimate, int from, int to) {
+        if (patterns == null || estimate >= INFINITE) {
+            return estimate;
+        }
+        return withPatterns(estimate, childCrates(from, to), from);
+    }
+
+    // Crates of the child of the prepared parent, in a scratch array.
+    private short[] childCrates(int from, int to) {
+        if (childCrates.length != parentCrates.length) {
+            childCrates = new short[parentCrates.length];
+        }
+        System.arraycopy(parentCrates, 0, childCrates, 0, parentCrates.length);
+        SokobanState.shiftCrate(childCrates, from, to);
+        return childCrates;
+    }
+
+    /**
+     * This is a helper function that estimates a configuration with more crates than targets. Every target needs a
+     * crate of its own, and that crate needs at least its distance to the target in pushes, which is no less than
+     * the distance of the closest crate. The crates left over are not counted.
+     *
+     * @param crateCells - Sorted cells of the crates
+     * @return The sum over the targets of the distance of their closest crate, INFINITE if a target has none.
+     */
+    private int goalSum(short[] crateCells) {
+        int sum = 0;
+        for (int[] targetDistances : distances) {
+            int closest = INFINITE;
+            for (short crate : crateCells) {
+                closest = Math.min(closest, targetDistances[crate]);
+            }
+            sum = Math.min(INFINITE, sum + closest);
+        }
+        return sum;
+    }
+
+    private int cost(int row, int column) {
+        return distances[column - 1][rowCells[row]];
+    }
+
+    // One step of the Hungarian method, it adds a row to the matching along the cheapest augmenting path.
+    private void augment(int row) {
+        match[0] = row;
+        int column = 0;
+        Arrays.fill(minimum, Integer.MAX_VALUE);
+        Arrays.fill(used, false);
+        do {
+            used[column] = true;
+            int matchedRow = match[column];
+            int delta = Integer.MAX_VALUE;
+            int next = 0;
+            for (int j = 1; j <= targets; j++) {
+                if (!used[j]) {
+                    int reduced = cost(matchedRow, j) - u[matchedRow] - v[j];
+                    if (reduced < minimum[j]) {
+                        minimum[j] = reduced;
+                        way[j] = column;
+                    }
+                    if (minimum[j] < delta) {
+                        delta = minimum[j];
+                        next = j;
+                    }
+                }
+            }
+            for (int j = 0; j <= targets; j++) {
+                if (used[j]) {
+                    u[match[j]] += delta;
+                    v[j] -= delta;
+                } else {
+                    minimum[j] -= delta;
+                }
+            }
+            column = next;
+        } while (match[column] != 0);
+
+        do {
+            int previous = way[column];
+            match[column] = match[previous];
+            column = previous;
+        } while (column != 0);
+    }
+
+    // Value of the dual, a lower bound on the cost of the best matching.
+    private int dual() {
+        int sum = 0;
+        for (int i = 1; i < u.length; i++) {
+            sum += u[i];
+        }
+        for (int j = 1; j <= targets; j++) {
+            sum += v[j];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,323 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Iterative deepening A* over pushes, in memory that does not grow with the search.
+ *
+ * There is a single mutable board. A push is made before the search goes down and undone when it comes back up,
+ * the crate array stays sorted in place and the Zobrist hash is updated incrementally, so visiting a node
+ * allocates nothing. The only other memory is the TranspositionTable, whose size is fixed when the solver is
+ * created, and the move buffers of every depth, which only grow with the length of the solution.
+ *
+ * Every iteration searches depth-first up to a bound on pushes plus the matching estimate of Heuristic, and the
+ * next bound is the smallest score that went over it, with the pair costs of the PatternDatabase on top where the
+ * level is small enough for one. The estimate never overestimates, so the first solution has the fewest pushes.
+ */
+public class IdaStarSolver {
+
+    public static final int DEFAULT_TABLE_ENTRIES = 1 << 20;
+
+    private final int tableEntries;
+    private final TranspositionTable.ReplacementPolicy policy;
+    private long expandedNodes;
+
+    // Set from another thread to stop the search, it is checked before every expansion.
+    private volatile boolean cancelled = false;
+
+    private Level level;
+    private ZobristTable zobrist;
+    private Reachability reachability;
+    private FreezeDetector freezeDetector;
+    private Heuristic heuristic;
+    private TranspositionTable table;
+
+    // The board, changed by makePush() and undoPush().
+    private short[] crateCells;
+    private boolean[] occupied;
+    private int playerCell;
+    private long crateHash;
+
+    // Pushes of every depth, cell of the crate before and after, and the estimate after the push.
+    private int[][] pushFrom = new int[0][];
+    private int[][] pushTo = new int[0][];
+    private int[][] pushEstimate = new int[0][];
+    // Index of the push that is being searched at every depth, which is the solution once the goal is reached.
+    private int[] pushTaken = new int[0];
+
+    private int iteration;
+    private int bound;
+    private int nextBound;
+    private int solutionLength;
+
+    public IdaStarSolver() {
+        this(DEFAULT_TABLE_ENTRIES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+    }
+
+    /**
+     * @param tableEntries - Size of the transposition table, 16 bytes per entry
+     * @param policy - Entries to keep when more states map to the same bucket of the table
+     */
+    public IdaStarSolver(int tableEntries, TranspositionTable.ReplacementPolicy policy) {
+        this.tableEntries = tableEntries;
+        this.policy = policy;
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        Level level;
+        try {
+            level = new Level(width, height, mapData);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        return solve(level, itemsData);
+    }
+
+    /**
+     * This method deepens the bound until a solution is found.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param itemsData - Player and crate positions
+     * @return Move sequence with the fewest pushes, or null if the puzzle has no solution or the search was cancelled.
+     */
+    public String solve(Level level, char[][] itemsData) {
+        cancelled = false;
+        this.level = level;
+        this.zobrist = level.getZobrist();
+        this.reachability = new Reachability(level);
+        this.freezeDetector = new FreezeDetector(level);
+        this.heuristic = new Heuristic(level, PatternDatabase.forLevel(level));
+        if (table == null) {
+            table = new TranspositionTable(tableEntries, policy);
+        }
+        expandedNodes = 0;
+
+        int width = level.getWidth();
+        int initialPlayerCell = -1;
+        List<Integer> crateList = new ArrayList<>();
+        for (int y = 0; y < level.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                if (itemsData[y][x] == '@') {
+                    initialPlayerCell = y * width + x;
+                } else if (itemsData[y][x] == '$') {
+                    crateList.add(y * width + x);
+                }
+            }
+        }
+        // The cells are visited row by row, so the crate cells are already sorted.
+        short[] initialCrateCells = new short[crateList.size()];
+        for (int i = 0; i < initialCrateCells.length; i++) {
+            initialCrateCells[i] = (short) (int) crateList.get(i);
+        }
+        int estimate = heuristic.estimate(initialCrateCells);
+        if (estimate == Heuristic.INFINITE) {
+            return null;
+        }
+
+        crateCells = initialCrateCells.clone();
+        occupied = new boolean[level.getCellCount()];
+        for (short crate : crateCells) {
+            occupied[crate] = true;
+        }
+        playerCell = initialPlayerCell;
+        crateHash = zobrist.hash(playerCell, crateCells) ^ zobrist.playerKey(playerCell);
+
+        bound = estimate;
+        while (bound < Heuristic.INFINITE) {
+            // The table is not cleared, the entries of the last iteration no longer match the iteration number.
+            iteration++;
+            nextBound = Heuristic.INFINITE;
+            if (search(0, estimate)) {
+                return solution(initialPlayerCell, initialCrateCells);
+            }
+            if (cancelled) {
+                return null;
+            }
+            bound = nextBound;
+        }
+        return null;
+    }
+
+    /**
+     * This method stops a search that is running on another thread. solve() then returns null.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Number of states expanded by all iterations of the last solve().
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * This method searches the board depth-first within the bound.
+     *
+     * @param depth - Pushes made so far
+     * @param estimate - Estimate of the pushes that are still needed
+     * @return True if the goal was reached, the board is then left in the goal state.
+     */
+    private boolean search(int depth, int estimate) {
+        if (cancelled) {
+            return false;
+        }
+        int score = depth + estimate;
+        if (score > bound) {
+            nextBound = Math.min(nextBound, score);
+            return false;
+        }
+        if (estimate == 0 && isGoal()) {
+            solutionLength = depth;
+            return true;
+        }
+
+        expandedNodes++;
+        int normalizedPlayer = reachability.fill(playerCell, crateCells);
+        long key = crateHash ^ zobrist.playerKey(normalizedPlayer);
+        if (table.isSearched(key, depth, iteration)) {
+            return false;
+        }
+        table.store(key, depth, iteration);
+
+        int pushes = generatePushes(depth);
+        int[] from = pushFrom[depth];
+        int[] to = pushTo[depth];
+        int[] estimates = pushEstimate[depth];
+        int savedPlayerCell = playerCell;
+        for (int i = 0; i < pushes; i++) {
+            pushTaken[depth] = i;
+            makePush(from[i], to[i]);
+            if (search(depth + 1, estimates[i])) {
+                return true;
+            }
+            undoPush(from[i], to[i], savedPlayerCell);
+        }
+        return false;
+    }
+
+    /**
+     * This method fills the push buffers of a depth with the valid pushes of the board, the most promising first.
+     * It has to run right after the reachability of the board has been filled.
+     *
+     * @param depth - Depth of the buffers to fill
+     * @return The number of pushes.
+     */
+    private int generatePushes(int depth) {
+        ensureDepth(depth);
+        int[] from = pushFrom[depth];
+        int[] to = pushTo[depth];
+        int[] estimates = pushEstimate[depth];
+
+        int pushes = 0;
+        for (short crateCell : crateCells) {
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int target = level.neighbour(crateCell, direction);
+                if (!reachability.isReachable(level.neighbour(crateCell, Level.opposite(direction)))
+                        || level.isWall(target) || level.isDead(target) || occupied[target]
+                        || freezeDetector.isDeadlock(crateCells, crateCell, target)) {
+                    continue;
+                }
+                from[pushes] = crateCell;
+                to[pushes] = target;
+                pushes++;
+            }
+        }
+
+        // The estimates are taken before going down, the recursion reuses the heuristic.
+        heuristic.prepare(crateCells);
+        int kept = 0;
+        for (int i = 0; i < pushes; i++) {
+            int estimate = heuristic.estimateChild(from[i], to[i]);
+            if (estimate == Heuristic.INFINITE) {
+                continue;
+            }
+            // Insertion sort on the estimate.
+            int j = kept++;
+            int pushFromCell = from[i];
+            int pushToCell = to[i];
+            for (; j > 0 && estimates[j - 1] > estimate; j--) {
+                from[j] = from[j - 1];
+                to[j] = to[j - 1];
+                estimates[j] = estimates[j - 1];
+            }
+            from[j] = pushFromCell;
+            to[j] = pushToCell;
+            estimates[j] = estimate;
+        }
+        return kept;
+    }
+
+    private void makePush(int from, int to) {
+        SokobanState.shiftCrate(crateCells, from, to);
+        occupied[from] = false;
+        occupied[to] = true;
+        crateHash ^= zobrist.crateKey(from) ^ zobrist.crateKey(to);
+        playerCell = from;
+    }
+
+    private void undoPush(int from, int to, int previousPlayerCell) {
+        SokobanState.shiftCrate(crateCells, to, from);
+        occupied[to] = false;
+        occupied[from] = true;
+        crateHash ^= zobrist.crateKey(from) ^ zobrist.crateKey(to);
+        playerCell = previousPlayerCell;
+    }
+
+    private boolean isGoal() {
+        for (int goal : level.getGoalCells()) {
+            if (!occupied[goal]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth < pushFrom.length) {
+            return;
+        }
+        int length = Math.max(depth + 1, pushFrom.length * 2);
+        int oldLength = pushFrom.length;
+        pushFrom = Arrays.copyOf(pushFrom, length);
+        pushTo = Arrays.copyOf(pushTo, length);
+        pushEstimate = Arrays.copyOf(pushEstimate, length);
+        pushTaken = Arrays.copyOf(pushTaken, length);
+        for (int i = oldLength; i < length; i++) {
+            pushFrom[i] = new int[crateCells.length * 4];
+            pushTo[i] = new int[crateCells.length * 4];
+            pushEstimate[i] = new int[crateCells.length * 4];
+        }
+    }
+
+    /**
+     * This is a helper function that replays the pushes of the solution from the initial board and turns them into
+     * player moves.
+     *
+     * @param initialPlayerCell - Cell of the player in the initial state
+     * @param initialCrateCells - Sorted cells of the crates in the initial state
+     * @return Move sequence in String to arrive on the goal state.
+     */
+    private String solution(int initialPlayerCell, short[] initialCrateCells) {
+        StringBuilder s = new StringBuilder();
+        short[] before = initialCrateCells;
+        int player = initialPlayerCell;
+        for (int depth = 0; depth < solutionLength; depth++) {
+            int i = pushTaken[depth];
+            int from = pushFrom[depth][i];
+            int to = pushTo[depth][i];
+            int direction = Level.UP;
+            while (level.neighbour(from, direction) != to) {
+                direction++;
+            }
+            // Every push was generated with the player able to get behind the crate.
+            s.append(reachability.path(player, level.neighbour(from, Level.opposite(direction)), before));
+            s.append(Level.MOVES[direction]);
+            before = SokobanState.moveCrate(before, from, to);
+            player = from;
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * SokoBot for a level editor, which solves the same map again after every small edit.
+ *
+ * The solver keeps what the last solve left behind and only throws away what the edit invalidates. A map whose walls
+ * and goals did not change keeps its compiled Level, and with it the search generator of the bot, its heuristic
+ * tables and its freeze and corral deadlock caches. An edit of the walls or goals compiles the map again from the
+ * last one, which keeps the pull distances of every goal whose pulls are not near a changed wall, see Level.edit().
+ * The last solution is kept as well: every state it went through whose rest still replays on the edited map ends
+ * the next search as soon as the search reaches it, see SolutionSuffixes. An edit that moves one crate or the player
+ * is then often solved by the few pushes that get back onto the old solution.
+ *
+ * The closed set of the last search is not kept. Its states were reached from the old start, so apart from the
+ * ones on the solution it says nothing about the new one. A solver is used by one thread at a time, like its bot.
+ */
+public class IncrementalSolver {
+
+    private final SokoBot bot;
+    // Compiled map of the last solve, null before the first one.
+    private Level level;
+
+    // Map, items and moves of the last solve that found a solution, null before the first one.
+    private Level solvedLevel;
+    private char[][] solvedItems;
+    private String solvedMoves;
+
+    private long levelsCompiled;
+    private long levelsReused;
+
+    public IncrementalSolver() {
+        this(new SokoBot());
+    }
+
+    /**
+     * @param bot - Bot that runs the searches, its configuration and budget are used as they are
+     */
+    public IncrementalSolver(SokoBot bot) {
+        this.bot = bot;
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        Level edited;
+        try {
+            edited = level != null ? level.edit(width, height, mapData) : new Level(width, height, mapData);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        if (edited == level) {
+            levelsReused++;
+        } else {
+            levelsCompiled++;
+        }
+        level = edited;
+        if (level == solvedLevel && sameItems(itemsData)) {
+            return solvedMoves;
+        }
+
+        SolverConfig config = bot.getConfig() != null ? bot.getConfig() : SolverConfig.forLevel(level);
+        boolean sameSize = solvedLevel != null && solvedLevel.getWidth() == width
+                && solvedLevel.getHeight() == height;
+        bot.reset();
+        bot.setSolutionSuffixes(sameSize
+                ? new SolutionSuffixes(level, config.isPushSearch(), solvedItems, solvedMoves) : null);
+        String moves = bot.solve(level, itemsData);
+        if (moves != null) {
+            solvedLevel = level;
+            solvedItems = new char[itemsData.length][];
+            for (int y = 0; y < itemsData.length; y++) {
+                solvedItems[y] = itemsData[y].clone();
+            }
+            solvedMoves = moves;
+        }
+        return moves;
+    }
+
+    // True if the items are the ones of the last solution.
+    private boolean sameItems(char[][] itemsData) {
+        if (solvedItems == null || solvedItems.length != itemsData.length) {
+            return false;
+        }
+        for (int y = 0; y < itemsData.length; y++) {
+            if (!Arrays.equals(solvedItems[y], itemsData[y])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method stops a search of the bot that is running on another thread.
+     */
+    public void cancel() {
+        bot.cancel();
+    }
+
+    /**
+     * This method forgets the last map and solution, so the next solve starts from nothing.
+     */
+    public void clear() {
+        level = null;
+        solvedLevel = null;
+        solvedItems = null;
+        solvedMoves = null;
+        bot.setSolutionSuffixes(null);
+    }
+
+    public SokoBot getBot() {
+        return bot;
+    }
+
+    // Number of solves that compiled their map, in full or from the last one.
+    public long getLevelsCompiled() {
+        return levelsCompiled;
+    }
+
+    // Number of solves that found their map unchanged.
+    public long getLevelsReused() {
+        return levelsReused;
+    }
+}
@@ -0,0 +1,323 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * The static part of a puzzle (walls, goals and dead tiles), compiled once per map.
+ *
+ * Cells are flattened to y * width + x, the same indices SokobanState uses. Every lookup is an array access,
+ * and the neighbours of every cell are precomputed so that moving in a direction is a single table read.
+ * Nothing in here changes once it is built, so one Level can be shared by any number of searches.
+ * An edited map is compiled with edit(), which shares the tables of this one that the edit leaves as they are.
+ */
+public class Level {
+
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    // Move characters of the directions, in the order of the constants above.
+    public static final char[] MOVES = {'u', 'd', 'l', 'r'};
+
+    // Push distance of a cell that can never reach the goal. Small enough that sums of them do not overflow.
+    public static final int UNREACHABLE = 1 << 20;
+
+    private final int width;
+    private final int height;
+    private final boolean[] wall;
+    private final boolean[] goal;
+    private final boolean[] dead;
+    private final int[] goalCells;
+
+    // goalDistances[goal][cell], the number of pushes to get a crate from the cell to the goal on an empty map.
+    private final int[][] goalDistances;
+
+    // neighbour[cell * 4 + direction], -1 when the neighbour is outside of the map.
+    private final int[] neighbour;
+
+    private final ZobristTable zobrist;
+
+    // Hash of the size, walls and goals, equal for maps that only differ in their crates and player.
+    private final long fingerprint;
+
+    public Level(int width, int height, char[][] mapData) {
+        this(width, height, mapData, null);
+    }
+
+    /**
+     * This is a helper constructor that compiles a map, taking over the tables of an earlier map of the same size
+     * that are still valid. The neighbours and Zobrist keys only depend on the size, and the pull distances of a goal
+     * only change if a wall changed next to the cells its pulls reach.
+     *
+     * @param previous - Compiled map of the same size, null to compile everything
+     */
+    private Level(int width, int height, char[][] mapData, Level previous) {
+        if (width * height > SokobanState.MAX_CELLS) {
+            throw new IllegalArgumentException("Map has more than " + SokobanState.MAX_CELLS + " cells");
+        }
+        this.width = width;
+        this.height = height;
+        int cells = width * height;
+        this.wall = new boolean[cells];
+        this.goal = new boolean[cells];
+        this.dead = new boolean[cells];
+        this.neighbour = previous != null ? previous.neighbour : new int[cells * 4];
+
+        int goalCount = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                wall[cell] = mapData[y][x] == '#';
+                goal[cell] = mapData[y][x] == '.';
+                if (goal[cell]) {
+                    goalCount++;
+                }
+                if (previous != null) {
+                    continue;
+                }
+
+                neighbour[cell * 4 + UP] = y > 0 ? cell - width : -1;
+                neighbour[cell * 4 + DOWN] = y < height - 1 ? cell + width : -1;
+                neighbour[cell * 4 + LEFT] = x > 0 ? cell - 1 : -1;
+                neighbour[cell * 4 + RIGHT] = x < width - 1 ? cell + 1 : -1;
+            }
+        }
+
+        this.goalCells = new int[goalCount];
+        for (int cell = 0, i = 0; cell < cells; cell++) {
+            if (goal[cell]) {
+                goalCells[i++] = cell;
+            }
+        }
+
+        this.goalDistances = new int[goalCount][];
+        for (int i = 0; i < goalCount; i++) {
+            int[] reused = previous != null ? previous.reusableDistances(goalCells[i], wall) : null;
+            goalDistances[i] = reused != null ? reused : pullDistances(goalCells[i]);
+        }
+
+        markDeadTiles();
+        this.zobrist = previous != null ? previous.zobrist : new ZobristTable(width, height);
+        this.fingerprint = fingerprint();
+    }
+
+    /**
+     * This method compiles an edited version of this map, for editors that solve the map again after every change.
+     * Only the tables the edit touches are computed again, see reusableDistances().
+     *
+     * @param width - Width of the edited map
+     * @param height - Height of the edited map
+     * @param mapData - Walls and goals of the edited map
+     * @return This level if the walls and goals are the same, otherwise the compiled edited map.
+     */
+    public Level edit(int width, int height, char[][] mapData) {
+        if (width != this.width || height != this.height) {
+            return new Level(width, height, mapData);
+        }
+        boolean same = true;
+        for (int y = 0; y < height && same; y++) {
+            for (int x = 0; x < width && same; x++) {
+                int cell = y * width + x;
+                same = wall[cell] == (mapData[y][x] == '#') && goal[cell] == (mapData[y][x] == '.');
+            }
+        }
+        return same ? this : new Level(width, height, mapData, this);
+    }
+
+    /**
+     * This is a helper function that finds the pull distances of a goal that an edit of the walls leaves as they are.
+     *
+     * A pull from a cell looks at the walls of its neighbour and of the cell behind it, so the walls that the pulls
+     * from a goal ever look at are at most two steps from a cell they reach. If no changed wall is that close to
+     * one, the pulls on the edited map are exactly the same.
+     *
+     * @param goalCell - Goal of the edited map
+     * @param editedWalls - Walls of the edited map, the same size as this one
+     * @return The pull distances of this map, or null if the goal is new or a changed wall can change them.
+     */
+    private int[] reusableDistances(int goalCell, boolean[] editedWalls) {
+        int index = Arrays.binarySearch(goalCells, goalCell);
+        if (index < 0) {
+            return null;
+        }
+        int[] distances = goalDistances[index];
+        for (int cell = 0; cell < wall.length; cell++) {
+            if (wall[cell] == editedWalls[cell]) {
+                continue;
+            }
+            int x = cell % width;
+            int y = cell / width;
+            for (int dy = -2; dy <= 2; dy++) {
+                for (int dx = Math.abs(dy) - 2; dx <= 2 - Math.abs(dy); dx++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx >= 0 && nx < width && ny >= 0 && ny < height
+                            && distances[ny * width + nx] != UNREACHABLE) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * This method hashes the static part of the map with 64-bit FNV-1a, so that data computed for a map can be
+     * stored and found again.
+     *
+     * @return The fingerprint of the map.
+     */
+    private long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        for (int cell = 0; cell < wall.length; cell++) {
+            hash = (hash ^ (wall[cell] ? 1 : goal[cell] ? 2 : 0)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * This method pulls a crate backwards from a cell with a BFS, ignoring the other crates.
+     *
+     * A crate can be pulled from a cell to its neighbour if the player has room to step back behind the neighbour.
+     * The number of pulls to reach a cell is the number of pushes it takes to bring a crate from there to the start.
+     *
+     * @param start - Cell to pull from, usually a goal
+     * @return The pull distance of every cell, UNREACHABLE for the cells the pulls never reach.
+     */
+    public int[] pullDistances(int start) {
+        int[] distances = new int[wall.length];
+        Arrays.fill(distances, UNREACHABLE);
+        int[] queue = new int[wall.length];
+        int head = 0;
+        int tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int direction = UP; direction <= RIGHT; direction++) {
+                int next = neighbour(cell, direction);
+                if (!isWall(next) && !isWall(neighbour(next, direction)) && distances[next] == UNREACHABLE) {
+                    distances[next] = distances[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * This method pushes a crate forwards from a cell with a BFS, ignoring the other crates.
+     *
+     * It is the mirror of pullDistances(), the number of pulls it takes to bring a crate from a cell back to the start.
+     *
+     * @param start - Cell to push from, usually a crate of the initial state
+     * @return The push distance of every cell, UNREACHABLE for the cells the pushes never reach.
+     */
+    public int[] pushDistances(int start) {
+        int[] distances = new int[wall.length];
+        Arrays.fill(distances, UNREACHABLE);
+        int[] queue = new int[wall.length];
+        int head = 0;
+        int tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int direction = UP; direction <= RIGHT; direction++) {
+                int next = neighbour(cell, direction);
+                // The player pushes from the cell on the other side of the crate.
+                if (!isWall(next) && !isWall(neighbour(cell, opposite(direction))) && distances[next] == UNREACHABLE) {
+                    distances[next] = distances[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * This method marks the dead tiles, the cells from which a crate can never be pushed to any goal.
+     *
+     * Instead of looking for corners, it uses the pull distances of the goals. Every floor cell that no goal can
+     * pull a crate to is dead, so pushing a crate there can be rejected with a single array lookup.
+     */
+    private void markDeadTiles() {
+        for (int cell = 0; cell < wall.length; cell++) {
+            dead[cell] = !wall[cell];
+            for (int[] distances : goalDistances) {
+                if (distances[cell] != UNREACHABLE) {
+                    dead[cell] = false;
+                    break;
+                }
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCellCount() {
+        return width * height;
+    }
+
+    /**
+     * This method returns the neighbouring cell in a direction.
+     *
+     * @param cell - Cell to move from, may be -1
+     * @param direction - One of UP, DOWN, LEFT, RIGHT
+     * @return The neighbouring cell, or -1 if it is outside of the map.
+     */
+    public int neighbour(int cell, int direction) {
+        return cell < 0 ? -1 : neighbour[cell * 4 + direction];
+    }
+
+    // Cells outside of the map count as walls.
+    public boolean isWall(int cell) {
+        return cell < 0 || wall[cell];
+    }
+
+    public boolean isGoal(int cell) {
+        return cell >= 0 && goal[cell];
+    }
+
+    public boolean isDead(int cell) {
+        return cell >= 0 && dead[cell];
+    }
+
+    public int[] getGoalCells() {
+        return goalCells;
+    }
+
+    // Push distances of every cell to every goal, see pullDistances(). Shared, must not be modified.
+    public int[][] getGoalDistances() {
+        return goalDistances;
+    }
+
+    public ZobristTable getZobrist() {
+        return zobrist;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // Direction that undoes the given one.
+    public static int opposite(int direction) {
+        return direction ^ 1;
+    }
+
+    // The two directions at a right angle to the given one, the lower of the two when second is false.
+    public static int perpendicular(int direction, boolean second) {
+        return (direction < LEFT ? LEFT : UP) + (second ? 1 : 0);
+    }
+}
@@ -0,0 +1,178 @@
+package solver;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader of level collections in the XSB and .sok formats.
+ *
+ * A level is a block of board rows, made of the characters # @ + $ * . and floor as a space, - or _. Every other
+ * line is text. A "Title:" line after a board names that board. Otherwise the last text line before the board is
+ * used, with its comment marker stripped, so "; 12" and "Level 12" both work. Levels without any name are named
+ * after their position. Only one level is held in memory at a time, so collections of any size can be read.
+ */
+public class LevelReader implements Iterator<Puzzle>, Closeable {
+
+    private static final String BOARD_CHARACTERS = "#@+$*.-_ ";
+
+    private final BufferedReader reader;
+    private int count = 0;
+
+    // Rows of the board being read, and the text before it.
+    private final List<String> rows = new ArrayList<>();
+    private String nameBefore;
+    // A finished board waits here until it is clear whether a Title: line follows it.
+    private List<String> pendingRows;
+    private String pendingName;
+    private Puzzle next;
+    private boolean finished = false;
+
+    public LevelReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    public static LevelReader open(Path file) throws IOException {
+        return new LevelReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = readNext();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Puzzle next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Puzzle puzzle = next;
+        next = null;
+        return puzzle;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * This method reads lines until a level is complete, that is until the board after it starts or the input ends.
+     *
+     * @return The next level, or null at the end of the input.
+     */
+    private Puzzle readNext() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = stripTrailing(line);
+            if (isBoardRow(trimmed)) {
+                rows.add(trimmed);
+                if (rows.size() == 1 && pendingRows != null) {
+                    return takePending();
+                }
+                continue;
+            }
+
+            endBoard();
+            String text = trimmed.trim();
+            if (text.isEmpty()) {
+                continue;
+            }
+            if (text.regionMatches(true, 0, "Title:", 0, 6)) {
+                if (pendingRows != null) {
+                    pendingName = text.substring(6).trim();
+                }
+            } else {
+                nameBefore = text.replaceFirst("^[;:'\\s]+", "").trim();
+            }
+        }
+
+        finished = true;
+        endBoard();
+        return pendingRows != null ? takePending() : null;
+    }
+
+    private void endBoard() {
+        if (rows.isEmpty()) {
+            return;
+        }
+        pendingRows = new ArrayList<>(rows);
+        pendingName = nameBefore;
+        nameBefore = null;
+        rows.clear();
+    }
+
+    private Puzzle takePending() {
+        count++;
+        String name = pendingName == null || pendingName.isEmpty() ? "#" + count : pendingName;
+        Puzzle puzzle = toPuzzle(count, name, pendingRows);
+        pendingRows = null;
+        pendingName = null;
+        return puzzle;
+    }
+
+    /**
+     * This method splits the board rows into the map and the items layer.
+     *
+     * @param index - Position of the level in the collection
+     * @param name - Name of the level
+     * @param board - Rows of the board
+     * @return The level.
+     */
+    static Puzzle toPuzzle(int index, String name, List<String> board) {
+        int height = board.size();
+        int width = 0;
+        for (String row : board) {
+            width = Math.max(width, row.length());
+        }
+
+        char[][] mapData = new char[height][width];
+        char[][] itemsData = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            String row = board.get(y);
+            for (int x = 0; x < width; x++) {
+                char c = x < row.length() ? row.charAt(x) : ' ';
+                mapData[y][x] = c == '#' ? '#' : c == '.' || c == '+' || c == '*' ? '.' : ' ';
+                itemsData[y][x] = c == '@' || c == '+' ? '@' : c == '$' || c == '*' ? '$' : ' ';
+            }
+        }
+        return new Puzzle(index, name, width, height, mapData, itemsData);
+    }
+
+    // A board row has a wall and nothing but board characters, which keeps text lines like "-- 3 --" out.
+    private static boolean isBoardRow(String line) {
+        if (line.indexOf('#') < 0) {
+            return false;
+        }
+        for (int i = 0; i < line.length(); i++) {
+            if (BOARD_CHARACTERS.indexOf(line.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stripTrailing(String line) {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+}
@@ -0,0 +1,393 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Macro pushes of push search, several pushes of one crate that the search takes as a single step.
+ *
+ * A tunnel is a cell with walls on both sides across a direction. A crate that is pushed into a tunnel with the
+ * player in the tunnel behind it can only go on or be left blocking the tunnel, so it is pushed on until it leaves
+ * the tunnel, reaches a goal or cannot be pushed any further.
+ *
+ * A goal room is a part of the map that holds every goal and is only connected to the rest by one entrance cell.
+ * The map is analyzed once for an order to fill the goals of the room in: goals are taken out of a full room one by
+ * one, the one closest to the entrance first, as long as its crate can still be pushed in from the entrance with the
+ * other goals filled. The fill order is that order reversed. A crate that is pushed onto the entrance while the room
+ * holds exactly the first goals of the order is pushed straight on to the next goal.
+ *
+ * The cells a macro push goes through are not kept, they are found again by a BFS of the pushes of the one crate
+ * when the moves of a solution are written, see transfer().
+ */
+public class MacroMoves {
+
+    private final Level level;
+    private final FreezeDetector freezeDetector;
+    // tunnel[cell * 2 + axis], walls on both sides of the cell across the axis, 0 for UP/DOWN and 1 for LEFT/RIGHT.
+    private final boolean[] tunnel;
+
+    // Goal room, entrance is -1 if the map has none or its goals cannot be filled in any order.
+    private int entrance = -1;
+    private boolean[] room;
+    // Position of every goal in the fill order, -1 for the other cells.
+    private int[] fillIndex;
+    private int[] fillOrder = new int[0];
+
+    // Scratch space of the crate transfer BFS, nodes are cell * 4 + side of the player.
+    private final Reachability reachability;
+    private final int[] visited;
+    private final int[] parent;
+    private final int[] queue;
+    private final int[] blocked;
+    private int stamp = 0;
+
+    // Result of the last extend().
+    private int crateCell;
+    private int playerCell;
+
+    public MacroMoves(Level level, FreezeDetector freezeDetector) {
+        this.level = level;
+        this.freezeDetector = freezeDetector;
+        int cells = level.getCellCount();
+        this.reachability = new Reachability(level);
+        this.visited = new int[cells * 4];
+        this.parent = new int[cells * 4];
+        this.queue = new int[cells * 4];
+        this.blocked = new int[cells];
+
+        this.tunnel = new boolean[cells * 2];
+        for (int cell = 0; cell < cells; cell++) {
+            for (int axis = 0; axis < 2; axis++) {
+                int direction = axis == 0 ? Level.UP : Level.LEFT;
+                tunnel[cell * 2 + axis] = !level.isWall(cell)
+                        && level.isWall(level.neighbour(cell, Level.perpendicular(direction, false)))
+                        && level.isWall(level.neighbour(cell, Level.perpendicular(direction, true)));
+            }
+        }
+        findGoalRoom();
+    }
+
+    /**
+     * This is a helper function that looks for the smallest goal room and the order to fill it in.
+     */
+    private void findGoalRoom() {
+        int[] goals = level.getGoalCells();
+        if (goals.length < 2) {
+            return;
+        }
+        int cells = level.getCellCount();
+        int connected = 0;
+        for (boolean inside : flood(goals[0], -1)) {
+            connected += inside ? 1 : 0;
+        }
+        boolean[] best = null;
+        int bestSize = Integer.MAX_VALUE;
+        int bestEntrance = -1;
+        for (int cell = 0; cell < cells; cell++) {
+            if (level.isWall(cell) || level.isGoal(cell) || openSides(cell) < 2) {
+                continue;
+            }
+            boolean[] area = flood(goals[0], cell);
+            int size = 0;
+            for (boolean inside : area) {
+                size += inside ? 1 : 0;
+            }
+            boolean allGoals = true;
+            for (int goal : goals) {
+                allGoals &= area[goal];
+            }
+            boolean outside = false;
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(cell, direction);
+                outside |= !level.isWall(next) && !area[next];
+            }
+            // The room has to be the smaller part, not the rest of the map seen from a pocket.
+            if (allGoals && outside && size < connected - 1 - size && size < bestSize) {
+                best = area;
+                bestSize = size;
+                bestEntrance = cell;
+            }
+        }
+        if (best == null) {
+            return;
+        }
+
+        int[] order = fillOrder(best, bestEntrance);
+        if (order != null) {
+            room = best;
+            entrance = bestEntrance;
+            fillOrder = order;
+            fillIndex = new int[cells];
+            Arrays.fill(fillIndex, -1);
+            for (int i = 0; i < order.length; i++) {
+                fillIndex[order[i]] = i;
+            }
+        }
+    }
+
+    // Number of neighbours that are not walls, an entrance has one inside and one outside of the room.
+    private int openSides(int cell) {
+        int sides = 0;
+        for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+            sides += level.isWall(level.neighbour(cell, direction)) ? 0 : 1;
+        }
+        return sides;
+    }
+
+    // Cells connected to the start without walking through the wall cells or the excluded cell.
+    private boolean[] flood(int start, int excluded) {
+        boolean[] area = new boolean[level.getCellCount()];
+        int head = 0;
+        int tail = 0;
+        area[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(cell, direction);
+                if (!level.isWall(next) && next != excluded && !area[next]) {
+                    area[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return area;
+    }
+
+    /**
+     * This is a helper function that finds the fill order of a goal room by taking its goals out one by one.
+     *
+     * @param area - Cells of the room
+     * @param entrance - Entrance of the room
+     * @return The goals in the order to fill them in, or null if the room cannot be filled.
+     */
+    private int[] fillOrder(boolean[] area, int entrance) {
+        int[] goals = level.getGoalCells();
+        int outsideCell = -1;
+        for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+            int next = level.neighbour(entrance, direction);
+            if (!level.isWall(next) && !area[next]) {
+                outsideCell = next;
+            }
+        }
+
+        // Walking distance of every cell from the entrance, the goals close to it are taken out first.
+        int[] distance = new int[level.getCellCount()];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        int head = 0;
+        int tail = 0;
+        distance[entrance] = 0;
+        queue[tail++] = entrance;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(cell, direction);
+                if (!level.isWall(next) && area[next] && distance[next] == Integer.MAX_VALUE) {
+                    distance[next] = distance[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        boolean[] filled = new boolean[level.getCellCount()];
+        for (int goal : goals) {
+            filled[goal] = true;
+        }
+        int[] order = new int[goals.length];
+        for (int remaining = goals.length; remaining > 0; remaining--) {
+            int taken = -1;
+            for (int goal : goals) {
+                if (filled[goal] && (taken < 0 || distance[goal] < distance[taken])
+                        && canFill(filled, goal, entrance, outsideCell)) {
+                    taken = goal;
+                }
+            }
+            if (taken < 0) {
+                return null;
+            }
+            filled[taken] = false;
+            order[remaining - 1] = taken;
+        }
+        return order;
+    }
+
+    // True if a crate can be pushed from the entrance onto the goal while the other filled goals hold crates.
+    private boolean canFill(boolean[] filled, int goal, int entrance, int outsideCell) {
+        short[] crateCells = new short[level.getGoalCells().length];
+        int count = 0;
+        crateCells[count++] = (short) entrance;
+        for (int other : level.getGoalCells()) {
+            if (filled[other] && other != goal) {
+                crateCells[count++] = (short) other;
+            }
+        }
+        crateCells = Arrays.copyOf(crateCells, count);
+        Arrays.sort(crateCells);
+        return transfer(crateCells, entrance, goal, outsideCell) != null;
+    }
+
+    /**
+     * This method turns a push into a macro push if it goes into a tunnel or onto the entrance of the goal room.
+     * The cells of the crate and the player after the macro are read with getCrateCell() and getPlayerCell().
+     *
+     * @param crateCells - Sorted cells of the crates after the push, changed in place to the end of the macro
+     * @param from - Cell of the crate before the push
+     * @param to - Cell of the crate after the push
+     * @param direction - Direction of the push
+     * @return The number of pushes, 1 if the push is not extended.
+     */
+    public int extend(short[] crateCells, int from, int to, int direction) {
+        int pushes = 1;
+        crateCell = to;
+        playerCell = from;
+
+        int axis = direction < Level.LEFT ? 0 : 1;
+        while (tunnel[crateCell * 2 + axis] && tunnel[playerCell * 2 + axis] && !level.isGoal(crateCell)
+                && canPush(crateCells, crateCell, direction)) {
+            int next = level.neighbour(crateCell, direction);
+            SokobanState.shiftCrate(crateCells, crateCell, next);
+            playerCell = crateCell;
+            crateCell = next;
+            pushes++;
+        }
+
+        if (crateCell == entrance) {
+            int target = nextGoal(crateCells);
+            int[] directions = target < 0 ? null : transfer(crateCells, entrance, target, playerCell);
+            if (directions != null) {
+                SokobanState.shiftCrate(crateCells, entrance, target);
+                playerCell = level.neighbour(target, Level.opposite(directions[directions.length - 1]));
+                crateCell = target;
+                pushes += directions.length;
+            }
+        }
+        return pushes;
+    }
+
+    // The next goal of the fill order if the room holds exactly the goals before it, -1 otherwise.
+    private int nextGoal(short[] crateCells) {
+        int inRoom = 0;
+        for (short crate : crateCells) {
+            if (room[crate]) {
+                if (fillIndex[crate] < 0) {
+                    return -1;
+                }
+                inRoom++;
+            }
+        }
+        for (short crate : crateCells) {
+            if (room[crate] && fillIndex[crate] >= inRoom) {
+                return -1;
+            }
+        }
+        return inRoom < fillOrder.length ? fillOrder[inRoom] : -1;
+    }
+
+    // Like SuccessorGenerator.isPushValid(), without counting anything.
+    private boolean canPush(short[] crateCells, int cell, int direction) {
+        int target = level.neighbour(cell, direction);
+        return !level.isWall(target) && Arrays.binarySearch(crateCells, (short) target) < 0 && !level.isDead(target)
+                && !freezeDetector.isDeadlock(crateCells, cell, target);
+    }
+
+    /**
+     * This method finds the fewest pushes that move one crate to another cell, the other crates staying where they
+     * are. It is a BFS over the cell of the crate and the side of it the player stands on.
+     *
+     * @param crateCells - Cells of all crates, with the moved crate on from
+     * @param from - Cell of the crate to move
+     * @param to - Cell to move it to
+     * @param playerCell - Cell of the player
+     * @return The directions of the pushes, or null if the crate cannot get there.
+     */
+    public int[] transfer(short[] crateCells, int from, int to, int playerCell) {
+        if (from == to) {
+            return new int[0];
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            Arrays.fill(blocked, 0);
+            stamp = 1;
+        }
+        for (short crate : crateCells) {
+            if (crate != from) {
+                blocked[crate] = stamp;
+            }
+        }
+        // The crate array of the flood fills, the moved crate is changed in place.
+        short[] crates = crateCells.clone();
+        int moved = Arrays.binarySearch(crates, (short) from);
+
+        int head = 0;
+        int tail = 0;
+        reachability.fill(playerCell, crates);
+        for (int side = Level.UP; side <= Level.RIGHT; side++) {
+            if (reachability.isReachable(level.neighbour(from, side))) {
+                visited[from * 4 + side] = stamp;
+                parent[from * 4 + side] = -1;
+                queue[tail++] = from * 4 + side;
+            }
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            int cell = node >> 2;
+            int direction = Level.opposite(node & 3);
+            int next = level.neighbour(cell, direction);
+            if (level.isWall(next) || blocked[next] == stamp) {
+                continue;
+            }
+            crates[moved] = (short) next;
+            reachability.fill(cell, crates);
+            for (int side = Level.UP; side <= Level.RIGHT; side++) {
+                int child = next * 4 + side;
+                if (visited[child] != stamp && reachability.isReachable(level.neighbour(next, side))) {
+                    visited[child] = stamp;
+                    parent[child] = node;
+                    queue[tail++] = child;
+                }
+            }
+            // The player stands where the crate was, on the side opposite to the push.
+            if (next == to) {
+                return pushes(next * 4 + Level.opposite(direction));
+            }
+        }
+        return null;
+    }
+
+    // Directions of the pushes that lead to a node of the transfer BFS.
+    private int[] pushes(int node) {
+        int count = 0;
+        for (int n = node; parent[n] >= 0; n = parent[n]) {
+            count++;
+        }
+        int[] directions = new int[count];
+        // A node is reached by a push away from the side of the player in its parent.
+        for (int n = node; parent[n] >= 0; n = parent[n]) {
+            directions[--count] = Level.opposite(parent[n] & 3);
+        }
+        return directions;
+    }
+
+    public boolean hasGoalRoom() {
+        return entrance >= 0;
+    }
+
+    // Entrance of the goal room, -1 if there is none.
+    public int getEntrance() {
+        return entrance;
+    }
+
+    // Goals of the room in the order they are filled in, empty if there is no room.
+    public int[] getFillOrder() {
+        return fillOrder.clone();
+    }
+
+    // Cell of the pushed crate after the last extend().
+    public int getCrateCell() {
+        return crateCell;
+    }
+
+    // Cell of the player after the last extend(), where the crate was before its last push.
+    public int getPlayerCell() {
+        return playerCell;
+    }
+}
@@ -0,0 +1,245 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Nodes of a best-first search in growable primitive arrays, referred to by int handles instead of objects.
+ *
+ * A node is its parent handle, the direction of the move or push that led to it, its cost so far, the cell of the
+ * player, its Zobrist hash and the offset of its crates in a shared short[] pool. A node that did not push a crate
+ * points at the crates of its parent, so only pushes grow the pool. Besides the arrays of the nodes and the table
+ * below, nothing is allocated per node, so a long search keeps the garbage collector out of the way.
+ *
+ * The arena also finds nodes by their state: an open-addressed table of handles keyed by the hash holds the latest
+ * node of every state. When a state is reached again through a cheaper path, the new node takes its place in the
+ * table and the old one is marked stale, so the NodeQueue skips it. Once a node is expanded it is marked closed.
+ */
+public class NodeArena {
+
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    // The move byte holds the direction in its low bits and the flags above it.
+    private static final int DIRECTION_MASK = 0x03;
+    private static final int CLOSED = 0x04;
+    private static final int STALE = 0x08;
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private byte[] moves = new byte[INITIAL_CAPACITY];
+    private int[] costs = new int[INITIAL_CAPACITY];
+    private int[] crateOffsets = new int[INITIAL_CAPACITY];
+    private short[] playerCells = new short[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private short[] crates = new short[INITIAL_CAPACITY];
+    private int cratesEnd;
+    private int crateCount;
+
+    // Handle + 1 of the latest node of every state, 0 for an empty slot.
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int mask = table.length - 1;
+    private int tableSize;
+
+    /**
+     * This method drops every node to start the next search, the arrays are kept.
+     *
+     * @param crateCount - Number of crates of every state of the next search
+     */
+    public void clear(int crateCount) {
+        this.crateCount = crateCount;
+        size = 0;
+        cratesEnd = 0;
+        Arrays.fill(table, 0);
+        tableSize = 0;
+    }
+
+    /**
+     * This method adds a node and makes it the latest node of its state.
+     *
+     * @param parent - Handle of the parent, NONE for the initial state
+     * @param direction - Direction of the move or push from the parent, Level.UP, DOWN, LEFT or RIGHT
+     * @param cost - Moves or pushes from the initial state
+     * @param playerCell - Cell of the player
+     * @param crateCells - Sorted cells of the crates, copied into the pool unless sharedCrates is given
+     * @param sharedCrates - Handle of a node with the same crates whose crates are reused, NONE to copy crateCells
+     * @param hash - Zobrist hash of the state
+     * @return The handle of the new node.
+     */
+    public int add(int parent, int direction, int cost, int playerCell, short[] crateCells, int sharedCrates,
+                   long hash) {
+        if (size == parents.length) {
+            grow();
+        }
+        int node = size++;
+        parents[node] = parent;
+        moves[node] = (byte) direction;
+        costs[node] = cost;
+        playerCells[node] = (short) playerCell;
+        hashes[node] = hash;
+        if (sharedCrates != NONE) {
+            crateOffsets[node] = crateOffsets[sharedCrates];
+        } else {
+            if (cratesEnd + crateCount > crates.length) {
+                crates = Arrays.copyOf(crates, Math.max(crates.length * 2, cratesEnd + crateCount));
+            }
+            System.arraycopy(crateCells, 0, crates, cratesEnd, crateCount);
+            crateOffsets[node] = cratesEnd;
+            cratesEnd += crateCount;
+        }
+        index(node);
+        return node;
+    }
+
+    /**
+     * This method looks up the latest node of a state.
+     *
+     * @param hash - Zobrist hash of the state
+     * @param playerCell - Cell of the player
+     * @param crateCells - Sorted cells of the crates
+     * @return The handle of the node, or NONE if the state was never added.
+     */
+    public int find(long hash, int playerCell, short[] crateCells) {
+        int i = (int) hash & mask;
+        for (int entry; (entry = table[i]) != 0; i = (i + 1) & mask) {
+            int node = entry - 1;
+            if (hashes[node] == hash && playerCells[node] == playerCell && hasCrates(node, crateCells)) {
+                return node;
+            }
+        }
+        return NONE;
+    }
+
+    // Puts the node into the table, in place of an older node of the same state.
+    private void index(int node) {
+        long hash = hashes[node];
+        int i = (int) hash & mask;
+        for (int entry; (entry = table[i]) != 0; i = (i + 1) & mask) {
+            int other = entry - 1;
+            if (hashes[other] == hash && playerCells[other] == playerCells[node] && sameCrates(other, node)) {
+                moves[other] |= STALE;
+                table[i] = node + 1;
+                return;
+            }
+        }
+        table[i] = node + 1;
+        if (++tableSize > (mask + 1) * 3 / 4) {
+            growTable();
+        }
+    }
+
+    private boolean hasCrates(int node, short[] crateCells) {
+        int offset = crateOffsets[node];
+        for (int i = 0; i < crateCount; i++) {
+            if (crates[offset + i] != crateCells[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameCrates(int node, int other) {
+        int offset = crateOffsets[node];
+        int otherOffset = crateOffsets[other];
+        if (offset == otherOffset) {
+            return true;
+        }
+        for (int i = 0; i < crateCount; i++) {
+            if (crates[offset + i] != crates[otherOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        int capacity = parents.length * 2;
+        parents = Arrays.copyOf(parents, capacity);
+        moves = Arrays.copyOf(moves, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        crateOffsets = Arrays.copyOf(crateOffsets, capacity);
+        playerCells = Arrays.copyOf(playerCells, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+    }
+
+    private void growTable() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        mask = table.length - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int i = (int) hashes[entry - 1] & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+            }
+        }
+    }
+
+    /**
+     * This method copies the crates of a node out of the pool.
+     *
+     * @param node - Handle of the node
+     * @param crateCells - Array to copy the sorted crate cells into, at least as long as the number of crates
+     * @return The same array.
+     */
+    public short[] copyCrates(int node, short[] crateCells) {
+        System.arraycopy(crates, crateOffsets[node], crateCells, 0, crateCount);
+        return crateCells;
+    }
+
+    public boolean hasCrateAt(int node, int cell) {
+        int offset = crateOffsets[node];
+        return Arrays.binarySearch(crates, offset, offset + crateCount, (short) cell) >= 0;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    // Direction of the move or push that led to the node, Level.UP, DOWN, LEFT or RIGHT.
+    public int getDirection(int node) {
+        return moves[node] & DIRECTION_MASK;
+    }
+
+    public int getCost(int node) {
+        return costs[node];
+    }
+
+    public int getPlayerCell(int node) {
+        return playerCells[node];
+    }
+
+    public long getHash(int node) {
+        return hashes[node];
+    }
+
+    public void close(int node) {
+        moves[node] |= CLOSED;
+    }
+
+    // True once the node was expanded.
+    public boolean isClosed(int node) {
+        return (moves[node] & CLOSED) != 0;
+    }
+
+    // True if a cheaper node of the same state was added after it.
+    public boolean isStale(int node) {
+        return (moves[node] & STALE) != 0;
+    }
+
+    public int getCrateCount() {
+        return crateCount;
+    }
+
+    // Number of nodes, including the stale ones.
+    public int size() {
+        return size;
+    }
+
+    // Bytes taken by the arrays, which is what the arena costs whether they are full or not.
+    public long getMemoryBytes() {
+        return (long) parents.length * (4 + 1 + 4 + 4 + 2 + 8) + 2L * crates.length + 4L * table.length;
+    }
+}
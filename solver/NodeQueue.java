@@ -0,0 +1,160 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Open list of the nodes of a NodeArena, ordered by their integer score.
+ *
+ * It works like OpenList, one LIFO bucket per score below BUCKET_COUNT and a binary heap for the others, but the
+ * buckets and the heap hold int handles in primitive arrays. A node that was replaced by a cheaper one of the same
+ * state stays queued and is skipped by pop(), the arena marks it stale.
+ */
+public class NodeQueue {
+
+    private static final int BUCKET_COUNT = 1 << 12;
+
+    private final NodeArena arena;
+
+    private final int[][] buckets = new int[BUCKET_COUNT][];
+    private final int[] bucketSizes = new int[BUCKET_COUNT];
+    private int lowestBucket = BUCKET_COUNT;
+    private int bucketEntries = 0;
+
+    // Binary min-heap for the scores that do not fit into a bucket.
+    private int[] heap = new int[64];
+    private long[] heapKeys = new long[64];
+    private int heapSize = 0;
+    private int sequence = 0;
+
+    /**
+     * @param arena - Arena of the queued nodes
+     */
+    public NodeQueue(NodeArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * @param node - Handle of the node to queue
+     * @param score - Score of the node, the lowest is popped first
+     */
+    public void push(int node, int score) {
+        if (score >= 0 && score < BUCKET_COUNT) {
+            int[] bucket = buckets[score];
+            if (bucket == null) {
+                bucket = new int[16];
+                buckets[score] = bucket;
+            } else if (bucketSizes[score] == bucket.length) {
+                bucket = Arrays.copyOf(bucket, bucket.length * 2);
+                buckets[score] = bucket;
+            }
+            bucket[bucketSizes[score]++] = node;
+            bucketEntries++;
+            lowestBucket = Math.min(lowestBucket, score);
+        } else {
+            heapPush(node, score);
+        }
+    }
+
+    /**
+     * This method removes the node with the lowest score. Nodes that were replaced by a cheaper one are skipped.
+     *
+     * @return The handle of the node with the lowest score, or NodeArena.NONE if the queue is empty.
+     */
+    public int pop() {
+        while (bucketEntries > 0 || heapSize > 0) {
+            int node;
+            if (bucketEntries > 0) {
+                while (bucketSizes[lowestBucket] == 0) {
+                    lowestBucket++;
+                }
+                node = buckets[lowestBucket][--bucketSizes[lowestBucket]];
+                bucketEntries--;
+            } else {
+                node = heapPop();
+            }
+
+            if (!arena.isStale(node)) {
+                return node;
+            }
+        }
+        return NodeArena.NONE;
+    }
+
+    public boolean isEmpty() {
+        return bucketEntries == 0 && heapSize == 0;
+    }
+
+    // Number of entries, including the ones that are waiting to be skipped.
+    public int size() {
+        return bucketEntries + heapSize;
+    }
+
+    public void clear() {
+        Arrays.fill(bucketSizes, 0);
+        lowestBucket = BUCKET_COUNT;
+        bucketEntries = 0;
+        heapSize = 0;
+        sequence = 0;
+    }
+
+    // Bytes taken by the buckets and the heap.
+    public long getMemoryBytes() {
+        long bytes = 12L * heap.length;
+        for (int[] bucket : buckets) {
+            if (bucket != null) {
+                bytes += 4L * bucket.length;
+            }
+        }
+        return bytes;
+    }
+
+    private void heapPush(int node, int score) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        // Score in the high bits, the inverted insertion order in the low bits so that ties pop LIFO like the buckets.
+        long key = ((long) score << 32) | (0xFFFFFFFFL - (sequence++ & 0xFFFFFFFFL));
+
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapKeys[i] = heapKeys[parent];
+            i = parent;
+        }
+        heap[i] = node;
+        heapKeys[i] = key;
+    }
+
+    private int heapPop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        long key = heapKeys[heapSize];
+
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (key <= heapKeys[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        if (heapSize > 0) {
+            heap[i] = last;
+            heapKeys[i] = key;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,172 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Open list of the best-first search, ordered by the integer score of the states.
+ *
+ * Scores below BUCKET_COUNT go into one bucket per score. A bucket is a stack, so ties are broken LIFO and
+ * both push and pop are O(1) (the cursor to the lowest non-empty bucket only moves forward between pushes
+ * of lower scores). Anything outside that range falls back to a binary heap with O(log n) operations, and pop()
+ * compares the top of the heap with the lowest bucket, since a negative score in the heap comes before every bucket.
+ *
+ * Every queued state is also remembered in a hash table. When a state is pushed again through a cheaper
+ * path the old entry stays where it is, but it no longer matches the table, so pop() simply skips it
+ * (lazy deletion instead of decrease-key).
+ */
+public class OpenList {
+
+    private static final int BUCKET_COUNT = 1 << 12;
+
+    private final ArrayList<ArrayList<SokobanState>> buckets = new ArrayList<>();
+    private int lowestBucket = BUCKET_COUNT;
+    private int bucketEntries = 0;
+
+    // Binary min-heap for the scores that do not fit into a bucket.
+    private SokobanState[] heap = new SokobanState[64];
+    private long[] heapKeys = new long[64];
+    private int heapSize = 0;
+    private int sequence = 0;
+
+    private final ClosedSet queued = new ClosedSet();
+
+    public OpenList() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.add(null);
+        }
+    }
+
+    /**
+     * This method queues a state with the score it already holds.
+     *
+     * @param state - State to queue
+     * @return True if the state was queued, false if it is already queued with the same or fewer moves.
+     */
+    public boolean push(SokobanState state) {
+        SokobanState previous = queued.get(state);
+        if (previous != null && previous.getMoves() <= state.getMoves()) {
+            return false;
+        }
+        queued.put(state);
+
+        int score = state.getScore();
+        if (score >= 0 && score < BUCKET_COUNT) {
+            ArrayList<SokobanState> bucket = buckets.get(score);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.set(score, bucket);
+            }
+            bucket.add(state);
+            bucketEntries++;
+            lowestBucket = Math.min(lowestBucket, score);
+        } else {
+            heapPush(state, score);
+        }
+        return true;
+    }
+
+    /**
+     * This method removes the state with the lowest score. Entries that were replaced by a cheaper path are skipped.
+     *
+     * @return The state with the lowest score, or null if the open list is empty.
+     */
+    public SokobanState pop() {
+        while (bucketEntries > 0 || heapSize > 0) {
+            SokobanState state;
+            ArrayList<SokobanState> bucket = null;
+            if (bucketEntries > 0) {
+                bucket = buckets.get(lowestBucket);
+                while (bucket == null || bucket.isEmpty()) {
+                    bucket = buckets.get(++lowestBucket);
+                }
+            }
+            // The score of the heap top is in the high bits of its key.
+            if (bucket != null && (heapSize == 0 || heapKeys[0] >> 32 > lowestBucket)) {
+                state = bucket.remove(bucket.size() - 1);
+                bucketEntries--;
+            } else {
+                state = heapPop();
+            }
+
+            if (queued.get(state) == state) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return bucketEntries == 0 && heapSize == 0;
+    }
+
+    // Number of entries, including the ones that are waiting to be skipped.
+    public int size() {
+        return bucketEntries + heapSize;
+    }
+
+    public void clear() {
+        for (ArrayList<SokobanState> bucket : buckets) {
+            if (bucket != null) {
+                bucket.clear();
+            }
+        }
+        lowestBucket = BUCKET_COUNT;
+        bucketEntries = 0;
+        Arrays.fill(heap, 0, heapSize, null);
+        heapSize = 0;
+        sequence = 0;
+        queued.clear();
+    }
+
+    private void heapPush(SokobanState state, int score) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        // Score in the high bits, the inverted insertion order in the low bits so that ties pop LIFO like the buckets.
+        long key = ((long) score << 32) | (0xFFFFFFFFL - (sequence++ & 0xFFFFFFFFL));
+
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapKeys[i] = heapKeys[parent];
+            i = parent;
+        }
+        heap[i] = state;
+        heapKeys[i] = key;
+    }
+
+    private SokobanState heapPop() {
+        SokobanState top = heap[0];
+        SokobanState last = heap[--heapSize];
+        long key = heapKeys[heapSize];
+        heap[heapSize] = null;
+
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (key <= heapKeys[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        if (heapSize > 0) {
+            heap[i] = last;
+            heapKeys[i] = key;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,393 @@
+package solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Exact push costs of every pair of crates on a level, for every cell of the player, with all other crates removed.
+ *
+ * The table is built once per map by a BFS of pulls that starts with the two crates on every pair of goals, so
+ * every entry is the fewest pushes that bring the two crates onto two different goals. Other crates only ever get in
+ * the way, so splitting the crates of a state into disjoint pairs and adding up their costs is a lower bound, and
+ * unlike the matching it sees two crates blocking each other.
+ *
+ * Tables are written to a binary file named after the fingerprint of the map and read back through a
+ * MappedByteBuffer, so the next run on the same map starts without building anything and the table stays out of
+ * the heap. The file is a header (magic, version, fingerprint, crate cell count, player cell count) followed by the
+ * cheapest cost of every pair and then the cost of every pair for every player cell, one unsigned byte each.
+ */
+public class PatternDatabase {
+
+    public static final int INFINITE = Heuristic.INFINITE;
+
+    private static final int MAGIC = 0x534f4b50; // "SOKP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    // Maps with more cells a crate can stand on are not worth the table, it grows with the cube of the cells.
+    private static final int MAX_CRATE_CELLS = 256;
+    // Byte value of a pair that can never reach the goals, costs are capped one below it.
+    private static final int UNSOLVABLE = 0xff;
+
+    private static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "sokobot-pdb");
+
+    private final Level level;
+    // Index of every cell a crate can stand on and every cell the player can stand on, -1 for the other cells.
+    private final int[] crateIndex;
+    private final int[] playerIndex;
+    private final int crateCells;
+    private final int playerCells;
+    private final int pairs;
+    private final int[] closestDistance;
+    // Header, then the cheapest cost of every pair, then the cost of every pair for every player cell.
+    private final ByteBuffer table;
+
+    private PatternDatabase(Level level, int[] crateIndex, int[] playerIndex, int crateCells, int playerCells,
+                            ByteBuffer table) {
+        this.level = level;
+        this.crateIndex = crateIndex;
+        this.playerIndex = playerIndex;
+        this.crateCells = crateCells;
+        this.playerCells = playerCells;
+        this.pairs = crateCells * (crateCells - 1) / 2;
+        this.table = table;
+
+        this.closestDistance = new int[level.getCellCount()];
+        Arrays.fill(closestDistance, INFINITE);
+        for (int[] distances : level.getGoalDistances()) {
+            for (int cell = 0; cell < closestDistance.length; cell++) {
+                closestDistance[cell] = Math.min(closestDistance[cell], distances[cell]);
+            }
+        }
+    }
+
+    /**
+     * This method loads the pattern database of a level from the temporary directory, building it if needed.
+     *
+     * @param level - Compiled map
+     * @return The pattern database, or null if the level is too large for one.
+     */
+    public static PatternDatabase forLevel(Level level) {
+        return forLevel(level, DEFAULT_DIRECTORY);
+    }
+
+    /**
+     * This method loads the pattern database of a level from a directory, building and storing it if there is no
+     * valid file for the map yet. If the file cannot be written, the table is kept in the heap instead.
+     *
+     * @param level - Compiled map
+     * @param directory - Directory of the database files
+     * @return The pattern database, or null if the level is too large for one.
+     */
+    public static synchronized PatternDatabase forLevel(Level level, Path directory) {
+        int[] crateIndex = new int[level.getCellCount()];
+        int[] playerIndex = new int[level.getCellCount()];
+        int[] counts = indexCells(level, crateIndex, playerIndex);
+        int crateCells = counts[0];
+        int playerCells = counts[1];
+        if (crateCells > MAX_CRATE_CELLS || crateCells < 2) {
+            return null;
+        }
+
+        int pairs = crateCells * (crateCells - 1) / 2;
+        long size = HEADER_SIZE + (long) pairs + (long) pairs * playerCells;
+        Path file = directory.resolve(String.format("%016x.pdb", level.getFingerprint()));
+
+        ByteBuffer table = map(file, size);
+        if (table == null || !hasHeader(table, level, crateCells, playerCells)) {
+            table = build(level, crateIndex, playerIndex, crateCells, playerCells, size);
+            try {
+                write(file, table);
+                table = map(file, size);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return new PatternDatabase(level, crateIndex, playerIndex, crateCells, playerCells, table);
+    }
+
+    /**
+     * This method calculates the bound of a state. The crates are split into neighbouring pairs in two ways, with
+     * the left-over crate on its closest goal, and the larger sum is taken.
+     *
+     * @param crateCells - Sorted cells of the crates
+     * @param playerCell - Cell of the player, -1 if it is not known
+     * @return The lower bound of the pushes, or INFINITE if one of the pairs can never be solved.
+     */
+    public int estimate(short[] crateCells, int playerCell) {
+        return Math.max(partition(crateCells, 0, playerCell), partition(crateCells, 1, playerCell));
+    }
+
+    /**
+     * This method looks up the pushes that two crates need on their own.
+     *
+     * @param first - Cell of one crate
+     * @param second - Cell of the other crate
+     * @param playerCell - Cell of the player, -1 for the cheapest cell
+     * @return The exact pushes, or INFINITE if the two crates can never both reach a goal.
+     */
+    public int pairCost(int first, int second, int playerCell) {
+        int i = crateIndex[first];
+        int j = crateIndex[second];
+        if (i < 0 || j < 0) {
+            return INFINITE;
+        }
+        int pair = i < j ? pairIndex(i, j) : pairIndex(j, i);
+        int player = playerCell < 0 ? -1 : playerIndex[playerCell];
+        int cost = player < 0
+                ? table.get(HEADER_SIZE + pair) & 0xff
+                : table.get(HEADER_SIZE + pairs + pair * playerCells + player) & 0xff;
+        return cost == UNSOLVABLE ? INFINITE : cost;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    private int partition(short[] crateCells, int offset, int playerCell) {
+        int sum = 0;
+        int i = 0;
+        if (offset == 1 && crateCells.length > 0) {
+            sum += closestDistance[crateCells[0]];
+            i = 1;
+        }
+        for (; i + 1 < crateCells.length; i += 2) {
+            sum += pairCost(crateCells[i], crateCells[i + 1], playerCell);
+        }
+        if (i < crateCells.length) {
+            sum += closestDistance[crateCells[i]];
+        }
+        return Math.min(INFINITE, sum);
+    }
+
+    private int pairIndex(int i, int j) {
+        return pairIndex(i, j, crateCells);
+    }
+
+    // Pairs i < j are numbered row by row.
+    private static int pairIndex(int i, int j, int crateCells) {
+        return i * (2 * crateCells - i - 1) / 2 + (j - i - 1);
+    }
+
+    /**
+     * This method numbers the cells of the table. The player cells are the cells that are connected to a goal, and
+     * the crate cells are the player cells that are not dead.
+     *
+     * @return The number of crate cells and the number of player cells.
+     */
+    private static int[] indexCells(Level level, int[] crateIndex, int[] playerIndex) {
+        Arrays.fill(playerIndex, -1);
+        Arrays.fill(crateIndex, -1);
+        int[] queue = new int[level.getCellCount()];
+        int tail = 0;
+        for (int goal : level.getGoalCells()) {
+            playerIndex[goal] = 0;
+            queue[tail++] = goal;
+        }
+        for (int head = 0; head < tail; head++) {
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(queue[head], direction);
+                if (!level.isWall(next) && playerIndex[next] < 0) {
+                    playerIndex[next] = 0;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        int crateCells = 0;
+        int playerCells = 0;
+        for (int cell = 0; cell < playerIndex.length; cell++) {
+            if (playerIndex[cell] < 0) {
+                continue;
+            }
+            playerIndex[cell] = playerCells++;
+            if (!level.isDead(cell)) {
+                crateIndex[cell] = crateCells++;
+            }
+        }
+        return new int[]{crateCells, playerCells};
+    }
+
+    /**
+     * This method computes the table with a BFS of pulls, over pairs of crates and normalized player cells. The
+     * costs are then copied to every cell of the area of the normalized cell.
+     */
+    private static ByteBuffer build(Level level, int[] crateIndex, int[] playerIndex, int crateCells, int playerCells,
+                                    long size) {
+        int pairs = crateCells * (crateCells - 1) / 2;
+        int[] crateCellOf = new int[crateCells];
+        int[] playerCellOf = new int[playerCells];
+        for (int cell = 0; cell < crateIndex.length; cell++) {
+            if (crateIndex[cell] >= 0) {
+                crateCellOf[crateIndex[cell]] = cell;
+            }
+            if (playerIndex[cell] >= 0) {
+                playerCellOf[playerIndex[cell]] = cell;
+            }
+        }
+        int[] pairFirst = new int[pairs];
+        int[] pairSecond = new int[pairs];
+        for (int i = 0, pair = 0; i < crateCells; i++) {
+            for (int j = i + 1; j < crateCells; j++, pair++) {
+                pairFirst[pair] = i;
+                pairSecond[pair] = j;
+            }
+        }
+
+        byte[] costs = new byte[pairs * playerCells];
+        Arrays.fill(costs, (byte) UNSOLVABLE);
+        Reachability reachability = new Reachability(level);
+        Reachability childReachability = new Reachability(level);
+        short[] crates = new short[2];
+        int[] queue = new int[1024];
+        int tail = 0;
+
+        // Both crates on goals, with the player in every area that is left.
+        int[] goals = level.getGoalCells();
+        for (int a = 0; a < goals.length; a++) {
+            for (int b = a + 1; b < goals.length; b++) {
+                crates[0] = (short) goals[a];
+                crates[1] = (short) goals[b];
+                int pair = pairIndex(crateIndex[goals[a]], crateIndex[goals[b]], crateCells);
+                for (int player = 0; player < playerCells; player++) {
+                    int cell = playerCellOf[player];
+                    if (cell == goals[a] || cell == goals[b]) {
+                        continue;
+                    }
+                    int state = pair * playerCells + playerIndex[reachability.fill(cell, crates)];
+                    if (costs[state] == 0) {
+                        continue;
+                    }
+                    costs[state] = 0;
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = state;
+                }
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int state = queue[head];
+            int pair = state / playerCells;
+            int cost = costs[state] & 0xff;
+            int first = crateCellOf[pairFirst[pair]];
+            int second = crateCellOf[pairSecond[pair]];
+            crates[0] = (short) first;
+            crates[1] = (short) second;
+            reachability.fill(playerCellOf[state % playerCells], crates);
+
+            for (int k = 0; k < 2; k++) {
+                int crate = k == 0 ? first : second;
+                int other = k == 0 ? second : first;
+                for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                    int pulledCrateCell = level.neighbour(crate, direction);
+                    int stepBackCell = level.neighbour(pulledCrateCell, direction);
+                    if (!reachability.isReachable(pulledCrateCell) || level.isWall(stepBackCell)
+                            || stepBackCell == other || crateIndex[pulledCrateCell] < 0) {
+                        continue;
+                    }
+
+                    short[] childCrates = pulledCrateCell < other
+                            ? new short[]{(short) pulledCrateCell, (short) other}
+                            : new short[]{(short) other, (short) pulledCrateCell};
+                    int childPair = pairIndex(crateIndex[childCrates[0]], crateIndex[childCrates[1]], crateCells);
+                    int child = childPair * playerCells
+                            + playerIndex[childReachability.fill(stepBackCell, childCrates)];
+                    if ((costs[child] & 0xff) != UNSOLVABLE) {
+                        continue;
+                    }
+                    costs[child] = (byte) Math.min(cost + 1, UNSOLVABLE - 1);
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        ByteBuffer table = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+        table.putInt(MAGIC).putInt(VERSION).putLong(level.getFingerprint()).putInt(crateCells).putInt(playerCells);
+
+        // Only the lowest cell of every area has a cost so far, it is copied to the rest of the area.
+        boolean[] done = new boolean[playerCells];
+        for (int pair = 0; pair < pairs; pair++) {
+            crates[0] = (short) crateCellOf[pairFirst[pair]];
+            crates[1] = (short) crateCellOf[pairSecond[pair]];
+            Arrays.fill(done, false);
+            int cheapest = UNSOLVABLE;
+            for (int player = 0; player < playerCells; player++) {
+                int cell = playerCellOf[player];
+                if (done[player] || cell == crates[0] || cell == crates[1]) {
+                    continue;
+                }
+                // The cells are numbered in order, so the first cell of an area is the one the BFS stored.
+                reachability.fill(cell, crates);
+                byte cost = costs[pair * playerCells + player];
+                cheapest = Math.min(cheapest, cost & 0xff);
+                for (int other = player; other < playerCells; other++) {
+                    if (reachability.isReachable(playerCellOf[other])) {
+                        costs[pair * playerCells + other] = cost;
+                        done[other] = true;
+                    }
+                }
+            }
+            table.put(HEADER_SIZE + pair, (byte) cheapest);
+        }
+        table.position(HEADER_SIZE + pairs);
+        table.put(costs);
+        table.clear();
+        return table;
+    }
+
+    private static boolean hasHeader(ByteBuffer table, Level level, int crateCells, int playerCells) {
+        return table.getInt(0) == MAGIC && table.getInt(4) == VERSION && table.getLong(8) == level.getFingerprint()
+                && table.getInt(16) == crateCells && table.getInt(20) == playerCells;
+    }
+
+    /**
+     * This method maps a database file read-only.
+     *
+     * @return The mapped file, or null if there is no file of the expected size.
+     */
+    private static ByteBuffer map(Path file, long size) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != size) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    // The table is written next to the final file and moved into place, so a reader never sees half a file.
+    private static void write(Path file, ByteBuffer table) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), "pdb", ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = table.duplicate();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Races several search configurations on separate threads and returns the first answer.
+ *
+ * Which configuration is fastest depends a lot on the level, so instead of guessing, all of them run at the same
+ * time. The level is compiled once and shared, since it is only read. Every configuration gets its own SokoBot
+ * with its own open list, closed set and scratch buffers. As soon as one of them finishes, the others are
+ * cancelled and stop at their next expansion.
+ *
+ * Every configuration searches the whole state space before it gives up, so the first one to return null has
+ * proven that the puzzle has no solution.
+ */
+public class PortfolioSolver {
+
+    private final List<SolverConfig> configs;
+
+    public PortfolioSolver() {
+        this(defaultConfigs(Runtime.getRuntime().availableProcessors()));
+    }
+
+    public PortfolioSolver(List<SolverConfig> configs) {
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("A portfolio needs at least one configuration");
+        }
+        this.configs = new ArrayList<>(configs);
+    }
+
+    /**
+     * This method builds the default portfolio, with the most promising configurations first.
+     *
+     * @param threads - Number of configurations to run at the same time
+     * @return Up to threads configurations, at least one.
+     */
+    public static List<SolverConfig> defaultConfigs(int threads) {
+        List<SolverConfig> configs = new ArrayList<>();
+        configs.add(SolverConfig.greedy(true));
+        configs.add(SolverConfig.weighted(true, 1, 3));
+        configs.add(SolverConfig.aStar(true).withPatternDatabase());
+        configs.add(SolverConfig.greedy(false));
+        configs.add(SolverConfig.weighted(true, 2, 3));
+        configs.add(SolverConfig.weighted(false, 1, 2));
+        return new ArrayList<>(configs.subList(0, Math.max(1, Math.min(threads, configs.size()))));
+    }
+
+    public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+        Level level;
+        try {
+            level = new Level(width, height, mapData);
+        } catch (IllegalArgumentException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        return solve(level, itemsData);
+    }
+
+    /**
+     * This method races the configurations on a compiled level.
+     *
+     * @param level - Compiled map of the puzzle, shared by all configurations
+     * @param itemsData - Player and crate positions
+     * @return Move sequence of the first configuration that finishes, or null if the puzzle has no solution.
+     */
+    public String solve(Level level, char[][] itemsData) {
+        ExecutorService executor = Executors.newFixedThreadPool(configs.size(), runnable -> {
+            Thread thread = new Thread(runnable, "portfolio-solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorCompletionService<String> completion = new ExecutorCompletionService<>(executor);
+
+        List<SokoBot> bots = new ArrayList<>();
+        List<Future<String>> futures = new ArrayList<>();
+        for (SolverConfig config : configs) {
+            SokoBot bot = new SokoBot(config);
+            bots.add(bot);
+            futures.add(completion.submit(() -> bot.solve(level, itemsData)));
+        }
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    return completion.take().get();
+                } catch (ExecutionException ex) {
+                    // One configuration failing is no reason to stop the others.
+                    ex.printStackTrace();
+                }
+            }
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            for (SokoBot bot : bots) {
+                bot.cancel();
+            }
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package solver;
+
+/**
+ * Called from time to time while a search runs, on the thread of the search.
+ */
+public interface ProgressListener {
+
+    /**
+     * @param stats - Counters of the running search, only valid during the call
+     */
+    void onProgress(SearchStats stats);
+}
@@ -0,0 +1,49 @@
+package solver;
+
+/**
+ * One level of a collection, in the two layers SokoBot takes: the map (walls and goals) and the items (player and
+ * crates). Rows are padded with floor to the width of the widest row.
+ */
+public class Puzzle {
+
+    private final int index;
+    private final String name;
+    private final int width;
+    private final int height;
+    private final char[][] mapData;
+    private final char[][] itemsData;
+
+    public Puzzle(int index, String name, int width, int height, char[][] mapData, char[][] itemsData) {
+        this.index = index;
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.mapData = mapData;
+        this.itemsData = itemsData;
+    }
+
+    // Position of the level in its collection, counted from 1.
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public char[][] getMapData() {
+        return mapData;
+    }
+
+    public char[][] getItemsData() {
+        return itemsData;
+    }
+}
@@ -0,0 +1,99 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Flood fill of the cells the player can walk to without pushing a crate.
+ *
+ * All buffers are allocated once per level and reused. Instead of clearing them between fills, every fill
+ * uses a new stamp, and a cell counts as visited (or occupied by a crate) only if it holds the current stamp.
+ */
+public class Reachability {
+
+    private final Level level;
+    private final int[] visited;
+    private final int[] occupied;
+    private final int[] queue;
+    private final int[] cameFrom;
+    private int stamp = 0;
+
+    public Reachability(Level level) {
+        this.level = level;
+        this.visited = new int[level.getCellCount()];
+        this.occupied = new int[level.getCellCount()];
+        this.queue = new int[level.getCellCount()];
+        this.cameFrom = new int[level.getCellCount()];
+    }
+
+    /**
+     * This method floods the area the player can reach. The result can be queried with isReachable()
+     * until the next call.
+     *
+     * @param playerCell - Cell of the player
+     * @param crateCells - Cells of the crates
+     * @return The lowest reachable cell, which is used as the normalized player position.
+     */
+    public int fill(int playerCell, short[] crateCells) {
+        nextStamp();
+        for (short crate : crateCells) {
+            occupied[crate] = stamp;
+        }
+
+        int minimum = playerCell;
+        int head = 0;
+        int tail = 0;
+        visited[playerCell] = stamp;
+        queue[tail++] = playerCell;
+        while (head < tail) {
+            int cell = queue[head++];
+            minimum = Math.min(minimum, cell);
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(cell, direction);
+                if (canEnter(next)) {
+                    visited[next] = stamp;
+                    cameFrom[next] = direction;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return minimum;
+    }
+
+    // Only valid for the last fill().
+    public boolean isReachable(int cell) {
+        return cell >= 0 && visited[cell] == stamp;
+    }
+
+    /**
+     * This method finds the shortest walk between two cells.
+     *
+     * @param from - Cell of the player
+     * @param to - Cell to walk to
+     * @param crateCells - Cells of the crates, they cannot be walked through
+     * @return The moves of the walk, or null if the cell cannot be reached.
+     */
+    public String path(int from, int to, short[] crateCells) {
+        fill(from, crateCells);
+        if (!isReachable(to)) {
+            return null;
+        }
+
+        StringBuilder s = new StringBuilder();
+        for (int cell = to; cell != from; cell = level.neighbour(cell, Level.opposite(cameFrom[cell]))) {
+            s.append(Level.MOVES[cameFrom[cell]]);
+        }
+        return s.reverse().toString();
+    }
+
+    private boolean canEnter(int cell) {
+        return !level.isWall(cell) && visited[cell] != stamp && occupied[cell] != stamp;
+    }
+
+    private void nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            Arrays.fill(occupied, 0);
+            stamp = 1;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package solver;
+
+/**
+ * Limits of a search: a deadline, a number of expanded states and the memory its states take.
+ *
+ * A budget is immutable, the with...() methods return a copy with one limit changed. The deadline is a point in
+ * System.nanoTime(), so the same budget can be handed to several searches that run one after the other and they
+ * all stop at the same time.
+ */
+public class SearchBudget {
+
+    private static final SearchBudget UNLIMITED = new SearchBudget(false, 0, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private final long maxNodes;
+    private final long maxMemoryBytes;
+
+    private SearchBudget(boolean hasDeadline, long deadlineNanos, long maxNodes, long maxMemoryBytes) {
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+        this.maxNodes = maxNodes;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    public static SearchBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @param millis - Time from now until the searches have to stop
+     * @return A budget with a deadline and no other limits.
+     */
+    public static SearchBudget ofMillis(long millis) {
+        return UNLIMITED.withDeadline(System.nanoTime() + millis * 1000000L);
+    }
+
+    /**
+     * @param deadlineNanos - Value of System.nanoTime() at which the searches have to stop
+     * @return A copy of this budget with the deadline.
+     */
+    public SearchBudget withDeadline(long deadlineNanos) {
+        return new SearchBudget(true, deadlineNanos, maxNodes, maxMemoryBytes);
+    }
+
+    /**
+     * @param maxNodes - Number of states a search may expand
+     * @return A copy of this budget with the node limit.
+     */
+    public SearchBudget withMaxNodes(long maxNodes) {
+        return new SearchBudget(hasDeadline, deadlineNanos, maxNodes, maxMemoryBytes);
+    }
+
+    /**
+     * @param maxMemoryBytes - Bytes the states of a search may take, see NodeArena
+     * @return A copy of this budget with the memory limit.
+     */
+    public SearchBudget withMaxMemory(long maxMemoryBytes) {
+        return new SearchBudget(hasDeadline, deadlineNanos, maxNodes, maxMemoryBytes);
+    }
+
+    /**
+     * This method checks the limits before an expansion.
+     *
+     * @param expandedNodes - States the search expanded so far
+     * @param memoryBytes - Bytes taken by the states the search keeps
+     * @return True if the search has to stop.
+     */
+    public boolean isExhausted(long expandedNodes, long memoryBytes) {
+        return expandedNodes >= maxNodes || memoryBytes >= maxMemoryBytes || isExpired();
+    }
+
+    // True once the deadline has passed, never without one.
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+}
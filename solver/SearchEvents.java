@@ -0,0 +1,93 @@
+package solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder events of the solver. While no recording has them enabled, they are never committed and the
+ * search does not collect the counters they would carry.
+ */
+final class SearchEvents {
+
+    private SearchEvents() {
+    }
+
+    @Name("solver.Solve")
+    @Label("Sokoban Solve")
+    @Category("Sokobot")
+    @Description("One search of SokoBot, from the initial state to the solution or the end of the search")
+    static class Solve extends Event {
+
+        @Label("Level Fingerprint")
+        long fingerprint;
+
+        @Label("Search")
+        String config;
+
+        @Label("Solved")
+        boolean solved;
+
+        @Label("Cancelled")
+        boolean cancelled;
+
+        @Label("Budget Exhausted")
+        boolean budgetExhausted;
+
+        @Label("Expanded Nodes")
+        long expandedNodes;
+
+        @Label("Generated Nodes")
+        long generatedNodes;
+
+        @Label("Duplicates")
+        long duplicates;
+
+        @Label("Dead Tile Prunes")
+        long deadTilePrunes;
+
+        @Label("Freeze Prunes")
+        long freezePrunes;
+
+        @Label("Unmatchable Prunes")
+        long unmatchablePrunes;
+
+        @Label("Cost Bound Prunes")
+        long costBoundPrunes;
+
+        @Label("Corral Prunes")
+        long corralPrunes;
+
+        @Label("Corral Deadlocks")
+        long corralDeadlocks;
+
+        @Label("Peak Open List Size")
+        int peakOpenListSize;
+
+        @Label("Peak Memory Estimate")
+        @DataAmount
+        long peakMemoryEstimate;
+    }
+
+    @Name("solver.SearchProgress")
+    @Label("Sokoban Search Progress")
+    @Category("Sokobot")
+    @Description("Counters of a running search, taken at the progress interval")
+    static class Progress extends Event {
+
+        @Label("Expanded Nodes")
+        long expandedNodes;
+
+        @Label("Generated Nodes")
+        long generatedNodes;
+
+        @Label("Open List Size")
+        int openListSize;
+
+        @Label("Stored States")
+        long storedStates;
+    }
+}
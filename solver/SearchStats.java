@@ -0,0 +1,151 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Counters of one search, collected only when they are asked for.
+ *
+ * The searches hold a reference that is null while nothing is collected, so turning the counters off costs a
+ * single null check per expansion. A SearchStats belongs to the thread that searches, its counters are plain fields.
+ * Progress listeners are called on that thread, so they can read it directly.
+ *
+ * Besides the counters, the time of every expansion is put into a histogram with one bucket per power of two
+ * nanoseconds, which is enough to tell a slow level with many nodes from one with slow nodes.
+ */
+public class SearchStats {
+
+    public enum PruneRule {
+        // The push puts a crate on a cell from which it can never reach a goal.
+        DEAD_TILE,
+        // The push freezes crates that are not all on goals.
+        FREEZE,
+        // The crates can no longer all be matched to a goal.
+        UNMATCHABLE,
+        // The state cannot lead to a solution shorter than the cost bound of the search.
+        COST_BOUND,
+        // The push is not one of the crates of the PI-corral that the state has to deal with first.
+        CORRAL,
+        // The crates of a PI-corral of the state can never be solved.
+        CORRAL_DEADLOCK
+    }
+
+    private final long start = System.nanoTime();
+    private long elapsedNanos;
+
+    private long expandedNodes;
+    private long generatedNodes;
+    private long duplicates;
+    private final long[] prunes = new long[PruneRule.values().length];
+    private int openListSize;
+    private int peakOpenListSize;
+    private long storedStates;
+    private long peakMemoryEstimate;
+    private final long[] latencyHistogram = new long[64];
+
+    void expanded(long nanos, int generated) {
+        expandedNodes++;
+        generatedNodes += generated;
+        latencyHistogram[nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)]++;
+    }
+
+    void duplicate() {
+        duplicates++;
+    }
+
+    void pruned(PruneRule rule) {
+        prunes[rule.ordinal()]++;
+    }
+
+    /**
+     * This method records the size of the search after an expansion.
+     *
+     * @param openList - States in the open list
+     * @param stored - States kept by the search, queued or explored
+     * @param memoryBytes - Bytes taken by the stored states, see NodeArena
+     */
+    void size(int openList, long stored, long memoryBytes) {
+        openListSize = openList;
+        peakOpenListSize = Math.max(peakOpenListSize, openList);
+        storedStates = stored;
+        peakMemoryEstimate = Math.max(peakMemoryEstimate, memoryBytes);
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public long getGeneratedNodes() {
+        return generatedNodes;
+    }
+
+    // Generated states that were left out because the search already had them.
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getPrunes(PruneRule rule) {
+        return prunes[rule.ordinal()];
+    }
+
+    public int getOpenListSize() {
+        return openListSize;
+    }
+
+    public int getPeakOpenListSize() {
+        return peakOpenListSize;
+    }
+
+    public long getStoredStates() {
+        return storedStates;
+    }
+
+    // Most bytes the stored states took at any point, as measured by the search.
+    public long getPeakMemoryEstimate() {
+        return peakMemoryEstimate;
+    }
+
+    // Time since the search started while it runs, the time of the whole search once it is done.
+    public long getElapsedNanos() {
+        return elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - start;
+    }
+
+    // Expansions per bucket, bucket i counts the expansions that took from 2^i to 2^(i+1) - 1 nanoseconds.
+    public long[] getLatencyHistogram() {
+        return Arrays.copyOf(latencyHistogram, latencyHistogram.length);
+    }
+
+    /**
+     * This method reads a percentile off the latency histogram.
+     *
+     * @param percentile - Percentile between 0 and 100
+     * @return The upper bound of the bucket the percentile falls in, in nanoseconds.
+     */
+    public long getLatencyPercentile(double percentile) {
+        long rank = (long) Math.ceil(expandedNodes * percentile / 100);
+        long count = 0;
+        for (int i = 0; i < latencyHistogram.length; i++) {
+            count += latencyHistogram[i];
+            if (count >= rank && count > 0) {
+                return (1L << Math.min(62, i + 1)) - 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("expanded=%d generated=%d duplicates=%d prunes(dead=%d freeze=%d unmatchable=%d bound=%d"
+                        + " corral=%d corralDeadlock=%d) open=%d peakOpen=%d peakMemory~%dKiB p50=%dns p99=%dns"
+                        + " elapsed=%dms",
+                expandedNodes, generatedNodes, duplicates, getPrunes(PruneRule.DEAD_TILE),
+                getPrunes(PruneRule.FREEZE), getPrunes(PruneRule.UNMATCHABLE), getPrunes(PruneRule.COST_BOUND),
+                getPrunes(PruneRule.CORRAL), getPrunes(PruneRule.CORRAL_DEADLOCK),
+                openListSize, peakOpenListSize,
+                peakMemoryEstimate / 1024, getLatencyPercentile(50), getLatencyPercentile(99),
+                getElapsedNanos() / 1000000);
+    }
+}
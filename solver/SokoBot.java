@@ -3,234 +3,270 @@ package solver;
 import java.util.*;
 
 public class SokoBot {
-  Set<Coordinate> walls = new HashSet<>();
-  Set<Coordinate> goals = new HashSet<>();
-  Stack<SokobanState> stack = new Stack<>();
-  List<SokobanState> explored = new ArrayList<>();
+  // Every node of the search lives in the arena, the open list only holds their handles.
+  NodeArena arena = new NodeArena();
+  NodeQueue open = new NodeQueue(arena);
+  Level level;
+
+  // Search to run, null picks one from the level when it is solved.
+  SolverConfig config;
+  // Move generation, deadlock checks and scoring of the level that is being solved. It is kept for the next search
+  // on the same level and configuration, along with the deadlock caches it filled.
+  SuccessorGenerator generator;
+  // States of an earlier solution whose rest can be reused, null for none, see SolutionSuffixes.
+  SolutionSuffixes suffixes;
+
+  // Set from another thread to stop the search, it is checked before every expansion.
+  volatile boolean cancelled = false;
+
+  // Number of states expanded by the last solve().
+  long expandedNodes = 0;
+
+  // Limits of every search, null for none. They are checked before every expansion like the cancel flag.
+  SearchBudget budget;
+  // True if the last search stopped because its budget ran out.
+  boolean budgetExhausted = false;
+  // Only solutions shorter than this are searched for, see SuccessorGenerator.setCostBound().
+  int costBound = Integer.MAX_VALUE;
+  // Time solve() spends shortening the moves it found, see SolutionOptimizer. 0 returns them as they are.
+  long postOptimizationMillis = 0;
+
+  // Counters of the running search, null while they are not collected so that the search only pays a null check.
+  SearchStats stats;
+  boolean statsEnabled = false;
+  ProgressListener progressListener;
+  long progressIntervalNanos = 1000000000L;
+  long nextProgress;
+
+  public SokoBot() {
+    this(null);
+  }
 
-  List<Coordinate> deadTiles = new ArrayList<>();
-  ArrayList<Integer> goalXList = new ArrayList<>();
-  ArrayList<Integer> goalYList = new ArrayList<>();
+  /**
+   * @param config - Search to run, null to pick one from the number of goals
+   */
+  public SokoBot(SolverConfig config) {
+    this.config = config;
+  }
 
   public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
-
+    Level level;
     try {
+      // This compiles the walls, goals and dead tiles of the map.
+      level = new Level(width, height, mapData);
+    } catch (IllegalArgumentException ex) {
+      ex.printStackTrace();
+      return null;
+    }
+    return solve(level, itemsData);
+  }
 
-      Coordinate initialPlayerPosition = new Coordinate(-1,-1);
-      HashMap<Coordinate, Integer> initialBoxPosition = new HashMap<>();
-
-      // This initializes the walls, player position, crate/box and goal coordinates.
-      for (int i = 0; i < height; i++) {
-        for (int j = 0; j < width; j++) {
-          if (mapData[i][j] == '#') {
-            walls.add(new Coordinate(j, i));
-          } else if (mapData[i][j] == '.') {
-            goals.add(new Coordinate(j, i));
-            goalXList.add(j);
-            goalYList.add(i);
-          }
-
-          if (itemsData[i][j] == '@') {
-            initialPlayerPosition = new Coordinate(j, i);
-          } else if (itemsData[i][j] == '$') {
-            initialBoxPosition.put(new Coordinate(j, i), 0);
-          }
-
-          if(i > 0 && j > 0 && i < height-1 && j < width-1){
-            if(mapData[i][j] == ' '){
-              if((mapData[i-1][j] == '#' && (mapData[i][j-1] == '#' || mapData[i][j+1] == '#'))){ // left
-                mapData[i][j] = 'X';
-                deadTiles.add(new Coordinate(j,i));
-              }
-              if((mapData[i+1][j] == '#' && (mapData[i][j-1] == '#' || mapData[i][j+1] == '#'))){ // left
-                mapData[i][j] = 'X';
-                deadTiles.add(new Coordinate(j,i));
-              }
-            }
-          }
-        }
+  /**
+   * This method solves a puzzle on a level that is already compiled.
+   * The level is only read, so the same level can be solved by several bots at the same time.
+   *
+   * @param level - Compiled map of the puzzle
+   * @param itemsData - Player and crate positions
+   * @return Move sequence that solves the puzzle, or null if there is none or the search was cancelled.
+   */
+  public String solve(Level level, char[][] itemsData) {
+    try {
+      String moves = search(level, itemsData).getMoves();
+      if(moves != null && postOptimizationMillis > 0){
+        SearchBudget optimization = SearchBudget.ofMillis(postOptimizationMillis);
+        moves = new SolutionOptimizer().optimize(level, itemsData, moves, optimization);
       }
+      return moves;
+    } catch (RuntimeException ex) {
+      ex.printStackTrace();
+      return null;
+    }
+  }
 
-      for (int i = 0; i < height; i++) {
-        for (int j = 0; j < width; j++) {
-            if((j == 1 || j == width-2) && !goalXList.contains(j) || ((i == 1 || i == height-2)&& !goalYList.contains(i))){
-              if (mapData[i][j] == ' '){
-                mapData[i][j] = 'X';
-                deadTiles.add(new Coordinate(j,i));
-              }
-            }
-        }
-      }
+  /**
+   * This method solves a puzzle like solve(), and also returns the counters of the search if they are collected,
+   * see setStatsEnabled(), setProgressListener() and the flight recorder events in SearchEvents.
+   * Unlike solve(), errors of the search are thrown to the caller.
+   *
+   * @param level - Compiled map of the puzzle
+   * @param itemsData - Player and crate positions
+   * @return The solution, its moves are null if there is none, the search was cancelled or its budget ran out.
+   */
+  public Solution search(Level level, char[][] itemsData) {
+    SearchEvents.Solve event = new SearchEvents.Solve();
+    event.begin();
+    stats = statsEnabled || progressListener != null || event.isEnabled() ? new SearchStats() : null;
+    nextProgress = System.nanoTime() + progressIntervalNanos;
+
+    // Whatever the last puzzle left behind is dropped, the open list and the arena keep their arrays.
+    open.clear();
+    expandedNodes = 0;
+    budgetExhausted = false;
+
+    this.level = level;
+    SolverConfig searchConfig = config != null ? config : SolverConfig.forLevel(level);
+    if(generator == null || generator.getLevel() != level || !generator.getConfig().equals(searchConfig)){
+      generator = new SuccessorGenerator(level, searchConfig);
+    }
+    generator.setStats(stats);
+    generator.setCostBound(costBound);
 
-/*
-      for(int i = 0; i < height ; i++){
-        for(int j = 0; j < width; j++){
-          System.out.print(mapData[i][j]);
-        }
-        System.out.println();
+    // Initial state is set and pushed into the open list
+    SokobanState initialState = generator.initialState(itemsData);
+    if(initialState == null){
+      return finish(null, -1, event);
+    }
+    int crates = initialState.getCrateCells().length;
+    arena.clear(crates);
+    int initial = arena.add(NodeArena.NONE, 0, 0, initialState.getPlayerCell(), initialState.getCrateCells(),
+        NodeArena.NONE, initialState.getHash());
+    SolutionSuffixes reusable = suffixes != null && suffixes.getLevel() == level
+        && suffixes.isPushSearch() == generator.getConfig().isPushSearch() ? suffixes : null;
+    if(reusable != null && reusable.find(arena, initial) >= 0){
+      return reuse(reusable, initial, event);
+    }
+    open.push(initial, initialState.getScore());
+    int[] scores = new int[4 * (crates + 1)];
+
+    // The open list always hands out the node with the lowest score.
+    int frontier;
+    while((frontier = open.pop()) != NodeArena.NONE){
+      if(cancelled){
+        return finish(null, -1, event);
+      }
+      if(budget != null && budget.isExhausted(expandedNodes, memoryBytes())){
+        budgetExhausted = true;
+        open.clear();
+        return finish(null, -1, event);
       }
-      Thread.sleep(5000);
-*/
-
-      // Initial state is set and pushed into the stack
-      SokobanState initialState = new SokobanState(initialPlayerPosition,initialBoxPosition,null,"",0);
-      stack.push(initialState);
-
-
-      while(!stack.isEmpty()){
-
-        SokobanState frontier = popLowestScore(stack);
-
-/* Debugger.
-        System.out.println(frontier.getPlayerPosition().getX() + " " + frontier.getPlayerPosition().getY());
-        System.out.println(frontier.getScore());
-*/
 
-        // If the boxes are in goal, terminate and return string
-        if(isGoal(frontier)){
-          stack.clear();
-          try{
-            return getMove(frontier);
-          } catch (NullPointerException e){
-            e.printStackTrace();
-            return null;
-          }
-        // Continue otherwise.
-        }else{
-          // Add frontier explored state
-          explored.add(frontier);
-          List<SokobanState> generatedStates = new ArrayList<>();
-          // Generate possible moves based on the player position.
-          generatedStates = generateSubstates(frontier);
-          // Push possible moves into the stack, and calculate heuristic score.
-          for(SokobanState state : generatedStates){
-            // This is changeble, I simply found that if there is less than 2 boxes, it produces less moves when A* heuristic is used.
-            if(goals.size() <= 2){
-              state.setHeuristicScore(calculateManHDistBoxesToGoals(state) + calculateManHDistPlayerToBoxes(state) + state.getMoves());
-            }else{
-              state.setHeuristicScore(calculateManHDistBoxesToGoals(state) + calculateManHDistPlayerToBoxes(state));
-            }
-            stack.push(state);
+      // If the boxes are in goal, terminate and return string
+      if(generator.isGoal(arena, frontier)){
+        open.clear();
+        return finish(generator.getMoves(arena, frontier), arena.getCost(frontier), event);
+      // Continue otherwise.
+      }else{
+        long start = stats != null ? System.nanoTime() : 0;
+        // Add frontier explored state
+        arena.close(frontier);
+        expandedNodes++;
+        // Generate possible moves based on the player position, they are added to the arena with their score.
+        int generated = generator.generate(arena, frontier, scores);
+        // Push possible moves into the open list, or finish with an earlier solution once one is on its way.
+        for(int i = 0; i < generated; i++){
+          int child = arena.size() - generated + i;
+          if(reusable != null && reusable.find(arena, child) >= 0){
+            open.clear();
+            return reuse(reusable, child, event);
           }
-
+          open.push(child, scores[i]);
         }
 
+        if(stats != null){
+          record(start, generated);
+        }
       }
-    } catch (Exception ex) {
-      ex.printStackTrace();
+
     }
-    System.out.println("All Possibilities calculated");
-    return null;
+    return finish(null, -1, event);
   }
 
   /**
-   * This is a helper function that returns the move sequence of the solver.
+   * This is a helper function that ends a search in a state of an earlier solution, with the moves to the state and
+   * the rest of the earlier solution from there.
    *
-   * @param state - The state where goal is reached
-   * @return Move sequence in String to arrive on the goal state.
+   * @param reusable - States of the earlier solution
+   * @param node - Handle of the node that is in one of them
+   * @param event - Event that was started with the search
+   * @return The solution.
    */
-  public String getMove(SokobanState state){
-    StringBuilder s = new StringBuilder();
-    for(;state.getParent()!=null;state=state.getParent()){
-      s.append(state.getPrevMove());
-    }
-    System.out.println(s.reverse().toString());
-    return s.toString();
+  private Solution reuse(SolutionSuffixes reusable, int node, SearchEvents.Solve event){
+    int state = reusable.find(arena, node);
+    String moves = reusable.splice(state, generator.getInitialPlayerCell(), generator.getMoves(arena, node));
+    return finish(moves, arena.getCost(node) + reusable.getCost(state), event);
   }
 
   /**
-   * This method generates the possible moves for the user.
-   * It involves valid move checking and tries to geenrate moves that will result into  a deadlock state and
-   *
-   * @param frontier - The current state of the game
+   * This is a helper function that counts an expansion, and reports the progress once the interval is over.
+   * Only called while the counters are collected.
    *
-   * @return A List of possible moves (At most size of 4)
+   * @param start - Time the expansion started
+   * @param generated - Number of states it generated
    */
-  public List<SokobanState> generateSubstates(SokobanState frontier){
-    List <SokobanState> generatedStates = new ArrayList<>();
-    generatedStates.clear();
-    HashMap<Coordinate, Integer> newCratePosition;
-    SokobanState temporaryState;
-
-    // If the move is valid for movement "UP".
-    if (isValid(frontier, 'u')) {
-      newCratePosition = new HashMap<>(frontier.getCratePosition());
-      // Hard copy the state to avoid issues related to memory address.
-      temporaryState = new SokobanState(
-              new Coordinate(frontier.getPlayerPosition().getX(), frontier.getPlayerPosition().getY() - 1),
-              newCratePosition, // Use the new cratePosition map
-              frontier,"u",frontier.getMoves()+1
-      );
-
-      // If there is a box infront of the user, move it forward (The error handling of this is already handled in isValid() method.
-      if (temporaryState.getCratePosition().get(temporaryState.getPlayerPosition()) != null) {
-          temporaryState.getCratePosition().remove(temporaryState.getPlayerPosition());
-          temporaryState.getCratePosition().put(new Coordinate(frontier.getPlayerPosition().getX(), frontier.getPlayerPosition().getY() - 2), 0);
+  private void record(long start, int generated){
+    long now = System.nanoTime();
+    stats.expanded(now - start, generated);
+    stats.size(open.size(), arena.size(), memoryBytes());
+
+    if(now >= nextProgress){
+      nextProgress = now + progressIntervalNanos;
+      if(progressListener != null){
+        progressListener.onProgress(stats);
       }
-
-      // If this state already exist, then there is no need to add it to the generated state.
-      if (!explored.contains(temporaryState)) {
-        generatedStates.add(temporaryState);
+      SearchEvents.Progress progress = new SearchEvents.Progress();
+      if(progress.shouldCommit()){
+        progress.expandedNodes = stats.getExpandedNodes();
+        progress.generatedNodes = stats.getGeneratedNodes();
+        progress.openListSize = stats.getOpenListSize();
+        progress.storedStates = stats.getStoredStates();
+        progress.commit();
       }
     }
+  }
 
-    if (isValid(frontier, 'd')) {
-      newCratePosition = new HashMap<>(frontier.getCratePosition());
-
-      temporaryState = new SokobanState(
-              new Coordinate(frontier.getPlayerPosition().getX(), frontier.getPlayerPosition().getY() + 1),
-              newCratePosition, // Use the new cratePosition map
-              frontier,"d",frontier.getMoves()+1
-      );
-
-      if (temporaryState.getCratePosition().get(temporaryState.getPlayerPosition()) != null) {
-          temporaryState.getCratePosition().remove(temporaryState.getPlayerPosition());
-          temporaryState.getCratePosition().put(new Coordinate(frontier.getPlayerPosition().getX(), frontier.getPlayerPosition().getY() + 2), 0);
-      }
+  // Bytes taken by the arena and the open list.
+  private long memoryBytes(){
+    return arena.getMemoryBytes() + open.getMemoryBytes();
+  }
 
-      if (!explored.contains(temporaryState)) {
-        generatedStates.add(temporaryState);
-      }
+  /**
+   * This is a helper function that ends a search, with its flight recorder event if one is recorded.
+   *
+   * @param moves - Move sequence of the solution, null if there is none
+   * @param cost - Pushes or moves of the solution, -1 if there is none
+   * @param event - Event that was started with the search
+   * @return The solution.
+   */
+  private Solution finish(String moves, int cost, SearchEvents.Solve event){
+    SearchStats finished = stats;
+    stats = null;
+    if(finished != null){
+      finished.finish();
     }
 
-    if (isValid(frontier, 'l')) {
-      newCratePosition = new HashMap<>(frontier.getCratePosition());
-
-      temporaryState = new SokobanState(
-              new Coordinate(frontier.getPlayerPosition().getX() - 1, frontier.getPlayerPosition().getY()),
-              newCratePosition, // Use the new cratePosition map
-              frontier,"l",frontier.getMoves()+1
-      );
-
-      if (temporaryState.getCratePosition().get(temporaryState.getPlayerPosition()) != null) {
-          temporaryState.getCratePosition().remove(temporaryState.getPlayerPosition());
-          temporaryState.getCratePosition().put(new Coordinate(frontier.getPlayerPosition().getX() - 2, frontier.getPlayerPosition().getY()), 0);
-      }
-
-      if (!explored.contains(temporaryState)) {
-        generatedStates.add(temporaryState);
+    event.end();
+    if(event.shouldCommit()){
+      event.fingerprint = level != null ? level.getFingerprint() : 0;
+      event.config = generator != null ? generator.getConfig().getName() : null;
+      event.solved = moves != null;
+      event.cancelled = cancelled;
+      event.budgetExhausted = budgetExhausted;
+      event.expandedNodes = expandedNodes;
+      if(finished != null){
+        event.generatedNodes = finished.getGeneratedNodes();
+        event.duplicates = finished.getDuplicates();
+        event.deadTilePrunes = finished.getPrunes(SearchStats.PruneRule.DEAD_TILE);
+        event.freezePrunes = finished.getPrunes(SearchStats.PruneRule.FREEZE);
+        event.unmatchablePrunes = finished.getPrunes(SearchStats.PruneRule.UNMATCHABLE);
+        event.costBoundPrunes = finished.getPrunes(SearchStats.PruneRule.COST_BOUND);
+        event.corralPrunes = finished.getPrunes(SearchStats.PruneRule.CORRAL);
+        event.corralDeadlocks = finished.getPrunes(SearchStats.PruneRule.CORRAL_DEADLOCK);
+        event.peakOpenListSize = finished.getPeakOpenListSize();
+        event.peakMemoryEstimate = finished.getPeakMemoryEstimate();
       }
+      event.commit();
     }
+    return new Solution(moves, cost, finished);
+  }
 
-    if (isValid(frontier, 'r')) {
-      newCratePosition = new HashMap<>(frontier.getCratePosition());
-
-      temporaryState = new SokobanState(
-              new Coordinate(frontier.getPlayerPosition().getX() + 1, frontier.getPlayerPosition().getY()),
-              newCratePosition, // Use the new cratePosition map
-              frontier,"r",frontier.getMoves()+1
-      );
-
-      if (temporaryState.getCratePosition().get(temporaryState.getPlayerPosition()) != null) {
-          temporaryState.getCratePosition().remove(temporaryState.getPlayerPosition());
-          temporaryState.getCratePosition().put(new Coordinate(frontier.getPlayerPosition().getX() + 2, frontier.getPlayerPosition().getY()), 0);
-      }
-
-      if (!explored.contains(temporaryState)) {
-        generatedStates.add(temporaryState);
-      }
-    }
-    return generatedStates;
+  /**
+   * This is a helper function that returns the move sequence of the solver.
+   *
+   * @param state - The state where goal is reached
+   * @return Move sequence in String to arrive on the goal state.
+   */
+  public String getMove(SokobanState state){
+    return generator.getMoves(state);
   }
 
   /**
@@ -242,289 +278,110 @@ public class SokoBot {
    */
 
   public boolean isGoal(SokobanState state){
-    int counter = 0;
-    for(Coordinate g : goals){
-      if(state.getCratePosition().get(g) != null){
-          counter++;
-      }
-    }
-    if(counter == goals.size()){
-      System.out.println("GoalReached");
-      return true;
-    }
-    return false;
+    return generator.isGoal(state);
   }
 
   /**
-   * This method checks the possible moves of the user before cloning it on the generateSubstates() method.
-   *
-   * Currently, it will return false if any of these is true.
-   * 1. If there is a wall infront of the player.
-   * 2. If there is a box infront of the box.
-   * 3. If the box is pushed in a corner resulting into a deadlock
-   * 4. If the direction in front of where the box is pushed is a wall, and the box is adjacent to another box
-   *    perpendicular to the box pushed.
-   *
-   * @param state - The current state
-   * @param direction - The direction of movement 'u', 'd', 'l', 'r'
-   * @return True if the movement is valid, false otherwise.
+   * This method stops a search that is running on another thread. solve() then returns null.
    */
+  public void cancel(){
+    cancelled = true;
+  }
 
-  public boolean isValid(SokobanState state,char direction){
-
-    switch (direction){
-      case 'd':{
-
-        // If there is a wall infront of the player checker.
-        if(walls.contains(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+1))){
-          return false;
-        }
-
-        if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+1))) { // if there is box
-          if(deadTiles.contains(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+2))){
-            return false;
-          }
-          if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+2))){
-            return false;
-          }
-        }
-
-
-
-
-        // If the box is adjacent and PARALLEL to the wall, and the box is pushed adjacent to another box on the direction
-        // where it is pushed.
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+1)) != null) {
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+2))){
-            if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+3)) != null
-                    && ((walls.contains(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY()+2))
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY()+3))) ||
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY()+2))
-                            && walls.contains(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY()+3))))
-            ){
-              return false;
-            }
-          }
-        }
-
-        // If the box is adjacent and PERPENDICULAR to the wall, and the box is pushed adjacent to another box on the direction
-        // where it is pushed.
-
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()+1)) != null) { // if there is box
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX(), state.getPlayerPosition().getY() + 2))){
-            if ((state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() + 1, state.getPlayerPosition().getY() + 2)) != null || // box adjacency left
-                    state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() - 1, state.getPlayerPosition().getY() + 2)) != null) // box adjacency right
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX(), state.getPlayerPosition().getY() + 3)) && //wall below first box
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX() - 1, state.getPlayerPosition().getY() + 3)) || // wall below second box
-                            walls.contains(new Coordinate(state.getPlayerPosition().getX() + 1, state.getPlayerPosition().getY() + 3)))
-            ) {
-              return false;
-            }
-          }
-
-        }
-
-        break;
-      }
-      case 'u':{
-        if(walls.contains(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-1))){
-          return false;
-        }
-
-        if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-1))) { // if there is box
-          if(deadTiles.contains(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-2))){
-            return false;
-          }
-          if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-2))){
-            return false;
-          }
-        }
-
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-1)) != null) { // if there is box
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-2))){
-            if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-3)) != null
-                    && ((walls.contains(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY()-2))
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY()-3))) ||
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY()-2))
-                            && walls.contains(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY()-3))))
-            ){
-              return false;
-            }
-          }
-        }
-
-
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX(),state.getPlayerPosition().getY()-1)) != null) { // if there is box
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX(), state.getPlayerPosition().getY() - 2))){
-            if ((state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() + 1, state.getPlayerPosition().getY() - 2)) != null || // box adjacency left
-                    state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() - 1, state.getPlayerPosition().getY() - 2)) != null) // box adjacency right
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX(), state.getPlayerPosition().getY() - 3)) && //wall below first box
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX() - 1, state.getPlayerPosition().getY() - 3)) || // wall below second box
-                            walls.contains(new Coordinate(state.getPlayerPosition().getX() + 1, state.getPlayerPosition().getY() - 3))) ) {
-              return false;
-            }
-          }
-        }
-
-
-
-        break;
-      }
-      case 'l':{
-        if(walls.contains(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY()))){
-          return false;
-        }
-
-        if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY()))) { // if there is box
-          if(deadTiles.contains(new Coordinate(state.getPlayerPosition().getX()-2,state.getPlayerPosition().getY()))){
-            return false;
-          }
-          if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX()-2,state.getPlayerPosition().getY()))){
-            return false;
-          }
-        }
-
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY())) != null) {
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX()-2,state.getPlayerPosition().getY()))){
-            if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX()-3,state.getPlayerPosition().getY())) != null
-                    && ((walls.contains(new Coordinate(state.getPlayerPosition().getX()-2,state.getPlayerPosition().getY()-1))
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX()-3,state.getPlayerPosition().getY()-1))) ||
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX()-2,state.getPlayerPosition().getY()+1))
-                            && walls.contains(new Coordinate(state.getPlayerPosition().getX()-3,state.getPlayerPosition().getY()+1))))
-            ){
-              return false;
-            }
-          }
-        }
-
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX()-1,state.getPlayerPosition().getY())) != null) { // if there is box
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX() -2, state.getPlayerPosition().getY()))){
-            if ((state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() - 2, state.getPlayerPosition().getY() + 1)) != null || // box adjacency left
-                    state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() -2, state.getPlayerPosition().getY() - 1)) != null) // box adjacency right
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX()-3, state.getPlayerPosition().getY())) && //wall below first box
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX() - 3, state.getPlayerPosition().getY() + 1)) || // wall below second box
-                            walls.contains(new Coordinate(state.getPlayerPosition().getX() - 3, state.getPlayerPosition().getY() - 1)))) {
-
-              return false;
-            }
-          }
-        }
-
-        break;
-      }
-      case 'r':{
-        if(walls.contains(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY()))){
-          return false;
-        }
+  /**
+   * This method gets the bot ready for the next puzzle, so one bot per thread can solve any number of puzzles.
+   * A cancel() of the last puzzle is forgotten as well. The generator is kept, search() only uses it on its own level.
+   */
+  public void reset(){
+    open.clear();
+    arena.clear(0);
+    level = null;
+    expandedNodes = 0;
+    budgetExhausted = false;
+    cancelled = false;
+  }
 
-        if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY()))) { // if there is box
-          if(deadTiles.contains(new Coordinate(state.getPlayerPosition().getX()+2,state.getPlayerPosition().getY()))){
-            return false;
-          }
-          if(state.getCratePosition().containsKey(new Coordinate(state.getPlayerPosition().getX()+2,state.getPlayerPosition().getY()))){
-            return false;
-          }
-        }
+  public boolean isCancelled(){
+    return cancelled;
+  }
 
+  public long getExpandedNodes(){
+    return expandedNodes;
+  }
 
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY())) != null) {
-          if(!goals.contains(new Coordinate(state.getPlayerPosition().getX()+2,state.getPlayerPosition().getY()))){
-            if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX()+3,state.getPlayerPosition().getY())) != null
-                    && ((walls.contains(new Coordinate(state.getPlayerPosition().getX()+2,state.getPlayerPosition().getY()-1))
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX()+3,state.getPlayerPosition().getY()-1))) ||
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX()+2,state.getPlayerPosition().getY()+1))
-                            && walls.contains(new Coordinate(state.getPlayerPosition().getX()+3,state.getPlayerPosition().getY()+1))))
-            ){
-              return false;
-            }
-          }
-        }
+  // Search of the next puzzle, null if it is picked from the number of goals.
+  public SolverConfig getConfig(){
+    return config;
+  }
 
-        if(state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX()+1,state.getPlayerPosition().getY())) != null) {// if there is box
-          if (!goals.contains(new Coordinate(state.getPlayerPosition().getX() + 2, state.getPlayerPosition().getY()))) {
-            if ((state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() + 2, state.getPlayerPosition().getY() + 1)) != null || // box adjacency left
-                    state.getCratePosition().get(new Coordinate(state.getPlayerPosition().getX() + 2, state.getPlayerPosition().getY() - 1)) != null) // box adjacency right
-                    && walls.contains(new Coordinate(state.getPlayerPosition().getX() + 3, state.getPlayerPosition().getY())) && //wall below first box
-                    (walls.contains(new Coordinate(state.getPlayerPosition().getX() + 3, state.getPlayerPosition().getY() + 1)) || // wall below second box
-                            walls.contains(new Coordinate(state.getPlayerPosition().getX() + 3, state.getPlayerPosition().getY() - 1)))) {
-              return false;
-            }
-          }
-        }
+  /**
+   * @param config - Search to run from the next puzzle on, null to pick one from the number of goals
+   */
+  public void setConfig(SolverConfig config){
+    this.config = config;
+  }
 
-        break;
-      } default: System.out.println("Unexpected Error");
-    }
+  /**
+   * This method limits the time, expanded states and memory of every search. A search that runs out of its budget
+   * returns no solution, like a cancelled one, and isBudgetExhausted() tells the two apart.
+   *
+   * @param budget - Limits of the searches, null for none
+   */
+  public void setBudget(SearchBudget budget){
+    this.budget = budget;
+  }
 
-    return true;
+  public boolean isBudgetExhausted(){
+    return budgetExhausted;
   }
 
   /**
-   * This method calculates the manhattan distance of the boxes to the goals.
+   * This method makes the searches look only for solutions shorter than a known one, states that cannot lead to
+   * one are pruned. A search that ends without a solution then proves there is no shorter one, if it is admissible.
    *
-   * @param state - Current State
-   * @return The box with the minimum distance to the goal.
+   * @param costBound - Pushes or moves of the known solution, Integer.MAX_VALUE for no bound
    */
-  int calculateManHDistBoxesToGoals(SokobanState state) {
-    int minimum = Integer.MAX_VALUE; // Initialize with a high value to find the minimum distance.
-
-    for (Coordinate goalCoordinate : goals) {
-      for (Coordinate cratePosition : state.getCratePosition().keySet()) {
-        int manhattanDistance = Math.abs(cratePosition.getX() - goalCoordinate.getX())
-                + Math.abs(cratePosition.getY() - goalCoordinate.getY());
-        minimum = Math.min(minimum, manhattanDistance);
-      }
-    }
-    return minimum;
+  public void setCostBound(int costBound){
+    this.costBound = costBound;
   }
 
   /**
-   * This method calculates the manhattan distance of the player to the boxes.
-   * It forms an attraction to the box, so that the player does not wander anywhere in the map.
+   * This method makes solve() shorten every solution it finds for a while, which pays off for the greedy searches
+   * whose solutions are far longer than needed. search() always returns the moves as they were found.
    *
-   * @param state - Current State
-   * @return The minimum manhattan distance of the player to the box.
+   * @param millis - Time to spend on every solution, 0 to return them as they are
    */
-
-  public int calculateManHDistPlayerToBoxes(SokobanState state){
-    int minimum = Integer.MAX_VALUE; // Initialize with a high value to find the minimum distance.
-
-    for (Coordinate cratePosition : state.getCratePosition().keySet()) {
-      int manhattanDistance = Math.abs(cratePosition.getX() - state.getPlayerPosition().getX())
-              + Math.abs(cratePosition.getY() - state.getPlayerPosition().getY());
-      minimum = Math.min(minimum, manhattanDistance);
-    }
-
-    return minimum;
+  public void setPostOptimization(long millis){
+    this.postOptimizationMillis = millis;
   }
 
   /**
-   * This is a helper function that pops the lowest score in the stack.
+   * This method lets the searches finish in a state of an earlier solution, with the rest of that solution. The
+   * result is still a solution, but no longer the one the search alone would find, so it is not the shortest even
+   * in an admissible search. The states are only used by searches on their level and kind of search.
    *
-   * @param stack - Current stack
-   * @return - SokobanState with the lowest score.
+   * @param suffixes - States of the earlier solution, null for none
    */
-  public static SokobanState popLowestScore(Stack<SokobanState> stack) {
-    if (stack.isEmpty()) {
-      // Handle the case when the stack is empty
-      return null;
-    }
-
-    SokobanState[] array = stack.toArray(new SokobanState[0]);
-    SokobanState lowestScoreState = array[0];
-
-    for (int i = array.length / 2; i < array.length; i++) {
-      if (array[i].getScore() < lowestScoreState.getScore()) {
-        lowestScoreState = array[i];
-      }
-    }
-
-    stack.remove(lowestScoreState);
-    return lowestScoreState;
+  public void setSolutionSuffixes(SolutionSuffixes suffixes){
+    this.suffixes = suffixes;
   }
 
+  /**
+   * @param statsEnabled - True to collect the counters of every search, see search()
+   */
+  public void setStatsEnabled(boolean statsEnabled){
+    this.statsEnabled = statsEnabled;
+  }
 
-
-
+  /**
+   * This method sets a listener that is called with the counters of the running search, which turns the counters on.
+   *
+   * @param listener - Listener to call, null for none
+   * @param intervalMillis - Time between two calls
+   */
+  public void setProgressListener(ProgressListener listener, long intervalMillis){
+    this.progressListener = listener;
+    this.progressIntervalNanos = intervalMillis * 1000000L;
+  }
 
 }
@@ -2,32 +2,50 @@ package solver;
 
 import java.util.*;
 
+/**
+ * A node of the search.
+ *
+ * Cells are flattened to y * width + x. The player is a single int and the crates are a sorted short[] of
+ * their cells, so equality and hashing only work on primitives. The crate array is never modified after the
+ * state is created, which lets a child share it with its parent when the player does not push anything.
+ */
 public class SokobanState implements Comparable<SokobanState> {
-    private Coordinate playerPosition;
-    private HashMap<Coordinate, Integer> cratePosition = new HashMap<>();
+
+    // Largest number of cells that fit in the short[] of crates.
+    public static final int MAX_CELLS = Short.MAX_VALUE + 1;
+
+    private final int playerCell;
+    private final short[] crateCells;
     private SokobanState parent = null;
     private int score;
     private int moves;
     private String prevMove;
+    private final long hash;
 
-    public SokobanState(Coordinate playerPosition, HashMap<Coordinate, Integer> cratePositions, SokobanState parent, String prevMove, int moves) {
-        this.playerPosition = playerPosition;
-        this.cratePosition = cratePositions;
+    public SokobanState(int playerCell, short[] crateCells, SokobanState parent, String prevMove, int moves, long hash) {
+        this.playerCell = playerCell;
+        this.crateCells = crateCells;
         this.parent = parent;
         this.prevMove = prevMove;
         this.moves = moves;
+        this.hash = hash;
     }
 
     public int getMoves() {
         return this.moves;
     }
 
-    public Coordinate getPlayerPosition() {
-        return playerPosition;
+    public int getPlayerCell() {
+        return playerCell;
+    }
+
+    // Sorted cells of the crates. The array is shared, it must not be modified.
+    public short[] getCrateCells() {
+        return crateCells;
     }
 
-    public HashMap<Coordinate, Integer> getCratePosition() {
-        return cratePosition;
+    public boolean hasCrateAt(int cell) {
+        return Arrays.binarySearch(crateCells, (short) cell) >= 0;
     }
 
     public SokobanState getParent() {
@@ -46,6 +64,61 @@ public class SokobanState implements Comparable<SokobanState> {
         return this.score;
     }
 
+    // Zobrist hash of the player and crate positions, see ZobristTable.
+    public long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * This is a helper function that moves one crate of a sorted crate array.
+     *
+     * @param crateCells - Sorted cells of the crates, it is left untouched
+     * @param from - Cell of the crate that is moved
+     * @param to - Cell where the crate ends up
+     * @return A new sorted array with the crate moved.
+     */
+    public static short[] moveCrate(short[] crateCells, int from, int to) {
+        short[] moved = new short[crateCells.length];
+        int index = Arrays.binarySearch(crateCells, (short) from);
+        int insert = -Arrays.binarySearch(crateCells, (short) to) - 1;
+
+        // Shift the crates between the old and the new position by one, then drop the crate in the gap.
+        if (insert <= index) {
+            System.arraycopy(crateCells, 0, moved, 0, insert);
+            System.arraycopy(crateCells, insert, moved, insert + 1, index - insert);
+            System.arraycopy(crateCells, index + 1, moved, index + 1, crateCells.length - index - 1);
+            moved[insert] = (short) to;
+        } else {
+            System.arraycopy(crateCells, 0, moved, 0, index);
+            System.arraycopy(crateCells, index + 1, moved, index, insert - index - 1);
+            System.arraycopy(crateCells, insert, moved, insert, crateCells.length - insert);
+            moved[insert - 1] = (short) to;
+        }
+        return moved;
+    }
+
+    /**
+     * This is a helper function that moves one crate of a sorted crate array in place, for searches that undo
+     * their pushes instead of keeping every state.
+     *
+     * @param crateCells - Sorted cells of the crates, changed in place
+     * @param from - Cell of the crate that is moved
+     * @param to - Cell where the crate ends up, must be free
+     */
+    public static void shiftCrate(short[] crateCells, int from, int to) {
+        int i = Arrays.binarySearch(crateCells, (short) from);
+        if (to > from) {
+            for (; i + 1 < crateCells.length && crateCells[i + 1] < to; i++) {
+                crateCells[i] = crateCells[i + 1];
+            }
+        } else {
+            for (; i > 0 && crateCells[i - 1] > to; i--) {
+                crateCells[i] = crateCells[i - 1];
+            }
+        }
+        crateCells[i] = (short) to;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -53,8 +126,9 @@ public class SokobanState implements Comparable<SokobanState> {
         if (o == null || getClass() != o.getClass())
             return false;
         SokobanState that = (SokobanState) o;
-        return Objects.equals(playerPosition, that.playerPosition) &&
-                Objects.equals(cratePosition, that.cratePosition);
+        return hash == that.hash &&
+                playerCell == that.playerCell &&
+                Arrays.equals(crateCells, that.crateCells);
     }
 
 
@@ -65,6 +139,6 @@ public class SokobanState implements Comparable<SokobanState> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(playerPosition, cratePosition);
+        return Long.hashCode(hash);
     }
 }
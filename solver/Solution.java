@@ -0,0 +1,36 @@
+package solver;
+
+/**
+ * Result of a search, the moves together with the counters of the search that found them.
+ */
+public class Solution {
+
+    private final String moves;
+    private final int cost;
+    private final SearchStats stats;
+
+    public Solution(String moves, int cost, SearchStats stats) {
+        this.moves = moves;
+        this.cost = cost;
+        this.stats = stats;
+    }
+
+    // Move sequence in u/d/l/r, null if the puzzle was not solved.
+    public String getMoves() {
+        return moves;
+    }
+
+    // Length of the solution in the steps of the search, pushes in push search and moves otherwise, -1 if unsolved.
+    public int getCost() {
+        return cost;
+    }
+
+    public boolean isSolved() {
+        return moves != null;
+    }
+
+    // Counters of the search, null if they were not collected.
+    public SearchStats getStats() {
+        return stats;
+    }
+}
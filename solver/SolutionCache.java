@@ -0,0 +1,291 @@
+package solver;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Solutions of puzzles that were solved before, keyed by the canonical orientation of the puzzle, see
+ * CanonicalLevel. The moves are stored in the canonical orientation as well.
+ *
+ * The most recently used entries are kept in memory. With a file, every entry is also appended to it, and an index
+ * from the fingerprint to the offset of the latest record is kept in memory, so an entry that fell out of memory or
+ * was stored by an earlier run costs one read. A record is its length, a CRC32 and then the fingerprint, the key and
+ * the moves, and a record that was cut off by a crash fails its length or CRC and is dropped with everything after
+ * it. Appends hold a lock on the file, so several processes can share one, but not several caches of one process.
+ */
+public class SolutionCache implements Closeable {
+
+    private static final int MAGIC = 0x534f4b43; // "SOKC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Length and CRC in front of every record.
+    private static final int RECORD_HEADER_SIZE = 8;
+    // Moves length of a puzzle that has no solution.
+    private static final int UNSOLVABLE = -1;
+
+    /**
+     * A cached result, the moves in the canonical orientation or no solution at all.
+     */
+    public static class Entry {
+
+        private final String moves;
+
+        Entry(String moves) {
+            this.moves = moves;
+        }
+
+        // Moves in the canonical orientation, null if the puzzle has no solution.
+        public String getMoves() {
+            return moves;
+        }
+
+        public boolean isSolvable() {
+            return moves != null;
+        }
+    }
+
+    private final Map<String, Entry> recent;
+    private final FileChannel channel;
+    // Offset of the latest record of every fingerprint in the file.
+    private final Map<Long, Long> index = new HashMap<>();
+    // End of the records that are in the index, records that other processes append after it are read on a miss.
+    private long indexedEnd = HEADER_SIZE;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity - Number of entries kept in memory
+     */
+    public SolutionCache(int capacity) {
+        this.recent = lru(capacity);
+        this.channel = null;
+    }
+
+    /**
+     * This method opens the file of the cache and indexes the records in it, creating the file if needed.
+     *
+     * @param capacity - Number of entries kept in memory
+     * @param file - Append-only file of the entries
+     * @throws IOException if the file cannot be read or is not a cache file
+     */
+    public SolutionCache(int capacity, Path file) throws IOException {
+        this.recent = lru(capacity);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean cacheFile = true;
+        FileLock lock = channel.lock();
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                channel.truncate(0);
+                write(header, 0);
+            } else {
+                ByteBuffer header = read(0, HEADER_SIZE);
+                cacheFile = header.getInt() == MAGIC && header.getInt() == VERSION;
+            }
+            if (cacheFile) {
+                indexTail();
+            }
+        } finally {
+            lock.release();
+        }
+        // The lock is released first, it cannot be released once the channel is closed.
+        if (!cacheFile) {
+            channel.close();
+            throw new IOException(file + " is not a solution cache");
+        }
+    }
+
+    private static Map<String, Entry> lru(int capacity) {
+        return new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * This method looks a puzzle up, in memory first and then in the file.
+     *
+     * @param level - Canonical orientation of the puzzle
+     * @return The cached result, or null if the puzzle was never stored.
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized Entry get(CanonicalLevel level) throws IOException {
+        Entry entry = recent.get(level.getKey());
+        if (entry == null && channel != null) {
+            entry = readEntry(level);
+            // Another process may have stored the puzzle since the file was last indexed.
+            if (entry == null && channel.size() > indexedEnd) {
+                indexTail();
+                entry = readEntry(level);
+            }
+            if (entry != null) {
+                recent.put(level.getKey(), entry);
+            }
+        }
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * This method stores the result of a puzzle. Only results that hold for good belong here, not the null of a
+     * search that was cancelled or ran out of its budget.
+     *
+     * @param level - Canonical orientation of the puzzle
+     * @param moves - Solution in the canonical orientation, null if the puzzle has no solution
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void put(CanonicalLevel level, String moves) throws IOException {
+        Entry entry = new Entry(moves);
+        recent.put(level.getKey(), entry);
+        if (channel == null) {
+            return;
+        }
+
+        byte[] key = level.getKey().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] solution = moves != null ? moves.getBytes(StandardCharsets.ISO_8859_1) : new byte[0];
+        ByteBuffer payload = ByteBuffer.allocate(8 + 4 + key.length + 4 + solution.length);
+        payload.putLong(level.getFingerprint());
+        payload.putInt(key.length).put(key);
+        payload.putInt(moves != null ? solution.length : UNSOLVABLE).put(solution);
+        payload.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.remaining());
+        record.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+
+        FileLock lock = channel.lock();
+        try {
+            // Records of other processes are indexed first, a record cut off by a crash is cut off the file.
+            indexTail();
+            if (channel.size() > indexedEnd) {
+                channel.truncate(indexedEnd);
+            }
+            long offset = indexedEnd;
+            write(record, offset);
+            index.put(level.getFingerprint(), offset);
+            indexedEnd = offset + record.capacity();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * This is a helper function that reads the record of the fingerprint of a puzzle.
+     *
+     * @param level - Canonical orientation of the puzzle
+     * @return The entry, or null if there is no record or the record is of another puzzle with the same fingerprint.
+     */
+    private Entry readEntry(CanonicalLevel level) throws IOException {
+        Long offset = index.get(level.getFingerprint());
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer payload = readRecord(offset);
+        if (payload == null) {
+            return null;
+        }
+        payload.getLong();
+        byte[] key = new byte[payload.getInt()];
+        payload.get(key);
+        if (!level.getKey().equals(new String(key, StandardCharsets.ISO_8859_1))) {
+            return null;
+        }
+        int length = payload.getInt();
+        if (length == UNSOLVABLE) {
+            return new Entry(null);
+        }
+        byte[] moves = new byte[length];
+        payload.get(moves);
+        return new Entry(new String(moves, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * This is a helper function that indexes the records after the indexed end of the file. It stops at the end of
+     * the file or at the first record that is cut off or fails its CRC.
+     */
+    private void indexTail() throws IOException {
+        long size = channel.size();
+        while (indexedEnd + RECORD_HEADER_SIZE <= size) {
+            ByteBuffer header = read(indexedEnd, RECORD_HEADER_SIZE);
+            int length = header.getInt();
+            if (length < 8 || indexedEnd + RECORD_HEADER_SIZE + length > size) {
+                return;
+            }
+            ByteBuffer payload = readRecord(indexedEnd);
+            if (payload == null) {
+                return;
+            }
+            index.put(payload.getLong(0), indexedEnd);
+            indexedEnd += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    // Payload of the record at the offset, null if its CRC does not match.
+    private ByteBuffer readRecord(long offset) throws IOException {
+        ByteBuffer header = read(offset, RECORD_HEADER_SIZE);
+        int length = header.getInt();
+        int checksum = header.getInt();
+        ByteBuffer payload = read(offset + RECORD_HEADER_SIZE, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Solution cache ends inside a record");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
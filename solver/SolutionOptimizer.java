@@ -0,0 +1,402 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shortens a solution that was already found, for the greedy searches whose solutions are far from the shortest.
+ *
+ * First every walk between two pushes is replaced by the shortest walk to the next push. Then the solution is cut
+ * into windows of a few pushes, and every window is searched again with an A* over single moves, from the state
+ * at its start to the exact state at its end. A window that is solved in fewer moves is spliced in. The windows of
+ * a pass do not overlap, so they are searched in parallel, and every other pass shifts them by half a window so
+ * that the cuts of the last pass are searched across. Passes go on until two in a row find nothing or the budget
+ * runs out.
+ *
+ * Every candidate is replayed on the puzzle before it is kept, so the result is always a valid solution and never
+ * longer than the one given.
+ */
+public class SolutionOptimizer {
+
+    public static final int DEFAULT_WINDOW = 8;
+    public static final long DEFAULT_WINDOW_NODES = 50000;
+
+    // Distance of a cell that a crate or the player can never walk from to its target.
+    private static final int INFINITE = Level.UNREACHABLE;
+
+    private final int window;
+    private final long windowNodes;
+    private final int threads;
+
+    public SolutionOptimizer() {
+        this(DEFAULT_WINDOW, DEFAULT_WINDOW_NODES, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param window - Pushes per window, at least 2
+     * @param windowNodes - States the search of one window may expand
+     * @param threads - Number of windows searched at the same time
+     */
+    public SolutionOptimizer(int window, long windowNodes, int threads) {
+        if (window < 2 || windowNodes < 1 || threads < 1) {
+            throw new IllegalArgumentException("A window needs at least 2 pushes, 1 node and 1 thread");
+        }
+        this.window = window;
+        this.windowNodes = windowNodes;
+        this.threads = threads;
+    }
+
+    /**
+     * A solution replayed push by push. Boundary b is the state right after the first b pushes, boundary 0 is the
+     * start of the puzzle.
+     */
+    private static class Trace {
+
+        final String moves;
+        // Cell of the player, sorted crate cells and index in the moves at every boundary.
+        final int[] players;
+        final short[][] crates;
+        final int[] ends;
+
+        Trace(String moves, int pushes) {
+            this.moves = moves;
+            this.players = new int[pushes + 1];
+            this.crates = new short[pushes + 1][];
+            this.ends = new int[pushes + 1];
+        }
+
+        int pushes() {
+            return players.length - 1;
+        }
+    }
+
+    /**
+     * This method shortens a solution within a time budget.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param itemsData - Player and crate positions
+     * @param moves - Move sequence that solves the puzzle
+     * @param budget - Budget of the whole optimization, only its deadline is used, null for none
+     * @return The shortest solution that was found and replayed successfully, at most as long as moves.
+     * @throws IllegalArgumentException if moves does not solve the puzzle
+     */
+    public String optimize(Level level, char[][] itemsData, String moves, SearchBudget budget) {
+        if (budget == null) {
+            budget = SearchBudget.unlimited();
+        }
+        int width = level.getWidth();
+        int playerCell = -1;
+        List<Integer> crateList = new ArrayList<>();
+        for (int y = 0; y < level.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                if (itemsData[y][x] == '@') {
+                    playerCell = y * width + x;
+                } else if (itemsData[y][x] == '$') {
+                    crateList.add(y * width + x);
+                }
+            }
+        }
+        // The cells are visited row by row, so the crate cells are already sorted.
+        short[] crateCells = new short[crateList.size()];
+        for (int i = 0; i < crateCells.length; i++) {
+            crateCells[i] = (short) (int) crateList.get(i);
+        }
+
+        Trace best = replay(level, playerCell, crateCells, moves);
+        if (best == null) {
+            throw new IllegalArgumentException("Moves do not solve the puzzle");
+        }
+        best = shortenWalks(level, best, playerCell, crateCells);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "solution-optimizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int offset = 0;
+            for (int failedPasses = 0; failedPasses < 2 && !budget.isExpired(); offset = offset == 0 ? window / 2 : 0) {
+                Trace improved = replay(level, playerCell, crateCells, pass(level, best, offset, budget, executor));
+                if (improved != null && improved.moves.length() < best.moves.length()) {
+                    best = shortenWalks(level, improved, playerCell, crateCells);
+                    failedPasses = 0;
+                } else {
+                    failedPasses++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return best.moves;
+    }
+
+    /**
+     * This is a helper function that replaces every walk between two pushes with the shortest one.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param trace - Replayed solution
+     * @param playerCell - Cell of the player at the start
+     * @param crateCells - Sorted cells of the crates at the start
+     * @return The shorter solution, or the same trace if it is not shorter.
+     */
+    private static Trace shortenWalks(Level level, Trace trace, int playerCell, short[] crateCells) {
+        Reachability reachability = new Reachability(level);
+        StringBuilder s = new StringBuilder();
+        for (int push = 0; push < trace.pushes(); push++) {
+            // The player ends a push where the crate was, so it pushed from the cell behind that.
+            int direction = direction(trace.moves.charAt(trace.ends[push + 1] - 1));
+            int pusherCell = level.neighbour(trace.players[push + 1], Level.opposite(direction));
+            s.append(reachability.path(trace.players[push], pusherCell, trace.crates[push]));
+            s.append(Level.MOVES[direction]);
+        }
+        if (s.length() >= trace.moves.length()) {
+            return trace;
+        }
+        Trace shortened = replay(level, playerCell, crateCells, s.toString());
+        return shortened != null ? shortened : trace;
+    }
+
+    /**
+     * This is a helper function that searches every window of a pass in parallel and splices the shorter ones in.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param trace - Replayed solution
+     * @param offset - Pushes before the first full window
+     * @param budget - Budget of the optimization
+     * @param executor - Threads to search the windows on
+     * @return The solution with the improved windows spliced in.
+     */
+    private String pass(Level level, Trace trace, int offset, SearchBudget budget, ExecutorService executor)
+            throws InterruptedException {
+        List<int[]> windows = new ArrayList<>();
+        for (int start = 0, end = Math.min(offset > 0 ? offset : window, trace.pushes()); start < end;
+             start = end, end = Math.min(end + window, trace.pushes())) {
+            if (end - start >= 2) {
+                windows.add(new int[]{start, end});
+            }
+        }
+
+        List<Future<String>> futures = new ArrayList<>();
+        for (int[] w : windows) {
+            futures.add(executor.submit(() -> searchWindow(level, trace.players[w[0]], trace.crates[w[0]],
+                    trace.players[w[1]], trace.crates[w[1]], trace.ends[w[1]] - trace.ends[w[0]], budget)));
+        }
+
+        StringBuilder s = new StringBuilder();
+        int copied = 0;
+        for (int i = 0; i < windows.size(); i++) {
+            String replacement;
+            try {
+                replacement = futures.get(i).get();
+            } catch (ExecutionException ex) {
+                // A window that failed keeps its moves.
+                ex.printStackTrace();
+                replacement = null;
+            }
+            if (replacement != null) {
+                s.append(trace.moves, copied, trace.ends[windows.get(i)[0]]).append(replacement);
+                copied = trace.ends[windows.get(i)[1]];
+            }
+        }
+        return s.append(trace.moves, copied, trace.moves.length()).toString();
+    }
+
+    /**
+     * This is a helper function that searches a window with A* over single moves. The estimate is the larger of
+     * the walk of the player to its target and the walks of the crates to their nearest target cells, both over the
+     * walls alone, so it never overestimates and only changes by one per move.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param fromPlayer - Cell of the player at the start of the window
+     * @param fromCrates - Sorted crate cells at the start of the window
+     * @param toPlayer - Cell of the player at the end of the window
+     * @param toCrates - Sorted crate cells at the end of the window
+     * @param bound - Moves of the window now, only shorter solutions are searched for
+     * @param budget - Budget of the optimization
+     * @return The moves of the window, or null if there are no shorter ones or they were not found in time.
+     */
+    private String searchWindow(Level level, int fromPlayer, short[] fromCrates, int toPlayer, short[] toCrates,
+                                int bound, SearchBudget budget) {
+        int[] crateDistances = walkDistances(level, toCrates);
+        int[] playerDistances = walkDistances(level, new short[]{(short) toPlayer});
+        ZobristTable zobrist = level.getZobrist();
+        long targetHash = zobrist.hash(toPlayer, toCrates);
+
+        NodeArena arena = new NodeArena();
+        NodeQueue open = new NodeQueue(arena);
+        arena.clear(fromCrates.length);
+        short[] crates = new short[fromCrates.length];
+        short[] childCrates = new short[fromCrates.length];
+        int start = arena.add(NodeArena.NONE, 0, 0, fromPlayer, fromCrates, NodeArena.NONE,
+                zobrist.hash(fromPlayer, fromCrates));
+        open.push(start, estimate(fromPlayer, fromCrates, crateDistances, playerDistances));
+
+        long expanded = 0;
+        int node;
+        while ((node = open.pop()) != NodeArena.NONE) {
+            int playerCell = arena.getPlayerCell(node);
+            arena.copyCrates(node, crates);
+            if (arena.getHash(node) == targetHash && playerCell == toPlayer && Arrays.equals(crates, toCrates)) {
+                StringBuilder s = new StringBuilder();
+                for (int n = node; arena.getParent(n) != NodeArena.NONE; n = arena.getParent(n)) {
+                    s.append(Level.MOVES[arena.getDirection(n)]);
+                }
+                return s.reverse().toString();
+            }
+            if (++expanded > windowNodes || (expanded & 1023) == 0 && budget.isExpired()) {
+                return null;
+            }
+            arena.close(node);
+
+            int cost = arena.getCost(node) + 1;
+            long playerHash = arena.getHash(node) ^ zobrist.playerKey(playerCell);
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(playerCell, direction);
+                if (level.isWall(next)) {
+                    continue;
+                }
+                short[] newCrates = crates;
+                int sharedCrates = node;
+                long hash = playerHash ^ zobrist.playerKey(next);
+                if (Arrays.binarySearch(crates, (short) next) >= 0) {
+                    int pushed = level.neighbour(next, direction);
+                    if (level.isWall(pushed) || level.isDead(pushed) || crateDistances[pushed] >= INFINITE
+                            || Arrays.binarySearch(crates, (short) pushed) >= 0) {
+                        continue;
+                    }
+                    System.arraycopy(crates, 0, childCrates, 0, crates.length);
+                    SokobanState.shiftCrate(childCrates, next, pushed);
+                    newCrates = childCrates;
+                    sharedCrates = NodeArena.NONE;
+                    hash ^= zobrist.crateKey(next) ^ zobrist.crateKey(pushed);
+                }
+
+                int score = cost + estimate(next, newCrates, crateDistances, playerDistances);
+                if (score >= bound) {
+                    continue;
+                }
+                int known = arena.find(hash, next, newCrates);
+                if (known != NodeArena.NONE && arena.getCost(known) <= cost) {
+                    continue;
+                }
+                open.push(arena.add(node, direction, cost, next, newCrates, sharedCrates, hash), score);
+            }
+        }
+        return null;
+    }
+
+    private static int estimate(int playerCell, short[] crateCells, int[] crateDistances, int[] playerDistances) {
+        int crates = 0;
+        for (short crate : crateCells) {
+            crates += crateDistances[crate];
+        }
+        return Math.max(crates, playerDistances[playerCell]);
+    }
+
+    /**
+     * This is a helper function that finds the walk from every cell to the nearest of some cells, over the walls
+     * alone.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param targets - Cells to walk to
+     * @return The distance of every cell, INFINITE for the cells that cannot reach any of them.
+     */
+    private static int[] walkDistances(Level level, short[] targets) {
+        int[] distances = new int[level.getCellCount()];
+        Arrays.fill(distances, INFINITE);
+        int[] queue = new int[level.getCellCount()];
+        int tail = 0;
+        for (short target : targets) {
+            if (distances[target] != 0) {
+                distances[target] = 0;
+                queue[tail++] = target;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int cell = queue[head];
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                int next = level.neighbour(cell, direction);
+                if (!level.isWall(next) && distances[next] == INFINITE) {
+                    distances[next] = distances[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * This is a helper function that replays a solution and records the state after every push.
+     *
+     * @param level - Compiled map of the puzzle
+     * @param playerCell - Cell of the player at the start
+     * @param crateCells - Sorted cells of the crates at the start, left untouched
+     * @param moves - Move sequence to replay
+     * @return The trace, without the moves after the last push, or null if a move is blocked or the crates do not
+     * all end up on a goal.
+     */
+    private static Trace replay(Level level, int playerCell, short[] crateCells, String moves) {
+        List<short[]> crates = new ArrayList<>();
+        List<Integer> players = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        short[] current = crateCells.clone();
+        crates.add(current.clone());
+        players.add(playerCell);
+        ends.add(0);
+        for (int i = 0; i < moves.length(); i++) {
+            int direction = direction(moves.charAt(i));
+            int next = direction >= 0 ? level.neighbour(playerCell, direction) : -1;
+            if (level.isWall(next)) {
+                return null;
+            }
+            if (Arrays.binarySearch(current, (short) next) >= 0) {
+                int pushed = level.neighbour(next, direction);
+                if (level.isWall(pushed) || Arrays.binarySearch(current, (short) pushed) >= 0) {
+                    return null;
+                }
+                SokobanState.shiftCrate(current, next, pushed);
+                crates.add(current.clone());
+                // The player stands where the crate was.
+                players.add(next);
+                ends.add(i + 1);
+            }
+            playerCell = next;
+        }
+        for (short crate : current) {
+            if (!level.isGoal(crate)) {
+                return null;
+            }
+        }
+
+        int pushes = ends.size() - 1;
+        Trace trace = new Trace(moves.substring(0, ends.get(pushes)), pushes);
+        for (int b = 0; b <= pushes; b++) {
+            trace.players[b] = players.get(b);
+            trace.crates[b] = crates.get(b);
+            trace.ends[b] = ends.get(b);
+        }
+        return trace;
+    }
+
+    private static int direction(char move) {
+        switch (Character.toLowerCase(move)) {
+            case 'u':
+                return Level.UP;
+            case 'd':
+                return Level.DOWN;
+            case 'l':
+                return Level.LEFT;
+            case 'r':
+                return Level.RIGHT;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The states an earlier solution went through, each with the rest of the solution from there, so that a search on
+ * a slightly different puzzle is done as soon as it reaches one of them.
+ *
+ * The solution is replayed on the level that is searched now, which may have been edited since. Only the states
+ * whose rest of the solution still replays on it are kept: a wall that was added on the way of a later move drops
+ * every state before it, and if the last state no longer has a crate on every goal, none are kept. In push search a
+ * state is the one after a push with the player normalized to its area, like the states of the search, and the walk
+ * to the next push is found again for the cell the search left the player on. In move search every move is a state.
+ *
+ * The states are found by their Zobrist hash in an open addressing table, since one is looked up for every state
+ * the search generates.
+ */
+public class SolutionSuffixes {
+
+    private final Level level;
+    private final boolean pushSearch;
+    private final String moves;
+
+    // Cell of the player, sorted crate cells, index in the moves where the rest starts, cell the player walks to
+    // before that move, and pushes or moves of the rest, for every state that was kept.
+    private final int[] players;
+    private final short[][] crates;
+    private final int[] starts;
+    private final int[] walkTargets;
+    private final int[] costs;
+
+    // Hash of every state and its index + 1, 0 marks an empty slot.
+    private final long[] tableHashes;
+    private final int[] tableStates;
+
+    private final Reachability reachability;
+
+    /**
+     * @param level - Compiled map of the puzzle that is searched now
+     * @param pushSearch - True if the search is over pushes, false if it is over moves
+     * @param itemsData - Player and crate positions the earlier solution starts from
+     * @param moves - Move sequence of the earlier solution
+     */
+    public SolutionSuffixes(Level level, boolean pushSearch, char[][] itemsData, String moves) {
+        this.level = level;
+        this.pushSearch = pushSearch;
+        this.moves = moves;
+        this.reachability = new Reachability(level);
+
+        int width = level.getWidth();
+        int playerCell = -1;
+        List<Integer> crateList = new ArrayList<>();
+        for (int y = 0; y < level.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                if (itemsData[y][x] == '@') {
+                    playerCell = y * width + x;
+                } else if (itemsData[y][x] == '$') {
+                    crateList.add(y * width + x);
+                }
+            }
+        }
+        // The cells are visited row by row, so the crate cells are already sorted.
+        short[] current = new short[crateList.size()];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = (short) (int) crateList.get(i);
+        }
+
+        // Replay on this level, the states after the last move that is blocked here are the ones that can be kept.
+        int[] playerBefore = new int[moves.length()];
+        short[][] cratesBefore = new short[moves.length()][];
+        boolean[] push = new boolean[moves.length()];
+        int firstValid = 0;
+        for (int i = 0; i < moves.length() && current != null; i++) {
+            playerBefore[i] = playerCell;
+            cratesBefore[i] = current;
+            int direction = "udlr".indexOf(Character.toLowerCase(moves.charAt(i)));
+            int next = direction >= 0 ? level.neighbour(playerCell, direction) : -1;
+            if (next < 0) {
+                // The replay cannot go on, so no state can be kept.
+                current = null;
+            } else if (level.isWall(next)) {
+                firstValid = i + 1;
+            } else if (Arrays.binarySearch(current, (short) next) >= 0) {
+                int pushed = level.neighbour(next, direction);
+                if (level.isWall(pushed) || Arrays.binarySearch(current, (short) pushed) >= 0) {
+                    firstValid = i + 1;
+                }
+                if (pushed >= 0) {
+                    current = current.clone();
+                    SokobanState.shiftCrate(current, next, pushed);
+                    push[i] = true;
+                }
+            }
+            playerCell = next;
+        }
+        if (current == null || !isSolved(current)) {
+            firstValid = moves.length();
+        }
+
+        // A state of push search is the one after a push, and its rest starts with the walk to the next push.
+        int[] keptMoves = new int[moves.length()];
+        int[] keptStarts = new int[moves.length()];
+        int[] keptCosts = new int[moves.length()];
+        int count = 0;
+        int pushes = 0;
+        int nextPush = -1;
+        for (int i = moves.length() - 1; i >= firstValid; i--) {
+            if (push[i]) {
+                pushes++;
+                nextPush = i;
+            }
+            if (nextPush >= 0 && (!pushSearch || i == 0 || push[i - 1])) {
+                keptMoves[count] = i;
+                keptStarts[count] = pushSearch ? nextPush : i;
+                keptCosts[count] = pushSearch ? pushes : moves.length() - i;
+                count++;
+            }
+        }
+        this.players = new int[count];
+        this.crates = new short[count][];
+        this.starts = Arrays.copyOf(keptStarts, count);
+        this.walkTargets = new int[count];
+        this.costs = Arrays.copyOf(keptCosts, count);
+        for (int k = 0; k < count; k++) {
+            int i = keptMoves[k];
+            players[k] = pushSearch ? reachability.fill(playerBefore[i], cratesBefore[i]) : playerBefore[i];
+            crates[k] = cratesBefore[i];
+            walkTargets[k] = playerBefore[starts[k]];
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2) * 2;
+        this.tableHashes = new long[capacity];
+        this.tableStates = new int[capacity];
+        ZobristTable zobrist = level.getZobrist();
+        for (int k = 0; k < count; k++) {
+            long hash = zobrist.hash(players[k], crates[k]);
+            int slot = (int) hash & (capacity - 1);
+            while (tableStates[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            tableHashes[slot] = hash;
+            tableStates[slot] = k + 1;
+        }
+    }
+
+    // Every goal has a crate on it, like SuccessorGenerator.isGoal().
+    private boolean isSolved(short[] crateCells) {
+        for (int goal : level.getGoalCells()) {
+            if (Arrays.binarySearch(crateCells, (short) goal) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method looks a node of a search up.
+     *
+     * @param arena - Arena of the search
+     * @param node - Handle of the node
+     * @return The state of the earlier solution the node is in, or -1 if it is in none.
+     */
+    public int find(NodeArena arena, int node) {
+        long hash = arena.getHash(node);
+        int playerCell = arena.getPlayerCell(node);
+        for (int slot = (int) hash & (tableStates.length - 1); tableStates[slot] != 0;
+             slot = (slot + 1) & (tableStates.length - 1)) {
+            int state = tableStates[slot] - 1;
+            if (tableHashes[slot] != hash || players[state] != playerCell
+                    || crates[state].length != arena.getCrateCount()) {
+                continue;
+            }
+            boolean same = true;
+            for (short crate : crates[state]) {
+                same &= arena.hasCrateAt(node, crate);
+            }
+            if (same) {
+                return state;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method finishes a solution in a state of the earlier one.
+     *
+     * @param state - State returned by find()
+     * @param playerCell - Cell of the player at the start of the prefix
+     * @param prefix - Moves of the search up to the state
+     * @return The prefix followed by the rest of the earlier solution.
+     */
+    public String splice(int state, int playerCell, String prefix) {
+        if (!pushSearch) {
+            return prefix + moves.substring(starts[state]);
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            playerCell = level.neighbour(playerCell, "udlr".indexOf(prefix.charAt(i)));
+        }
+        return prefix + reachability.path(playerCell, walkTargets[state], crates[state])
+                + moves.substring(starts[state]);
+    }
+
+    // Pushes or moves of the rest of the earlier solution from a state.
+    public int getCost(int state) {
+        return costs[state];
+    }
+
+    public int size() {
+        return players.length;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isPushSearch() {
+        return pushSearch;
+    }
+}
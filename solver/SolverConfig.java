@@ -0,0 +1,154 @@
+package solver;
+
+/**
+ * Settings of one search run by SokoBot.
+ *
+ * The score of a state is costWeight * moves + estimateWeight * heuristic. A cost weight of 0 is greedy best-first,
+ * equal weights are A*, and a larger estimate weight is weighted A*, which trades solution length for speed. The
+ * weights are integers so that the scores stay integers for the OpenList buckets.
+ */
+public class SolverConfig {
+
+    private final String name;
+    private final boolean pushSearch;
+    private final int costWeight;
+    private final int estimateWeight;
+    // Raise the estimate with the pair costs of a PatternDatabase.
+    private final boolean patternDatabase;
+    // Push crates through tunnels and into the goal room as one step, see MacroMoves.
+    private final boolean macros;
+
+    public SolverConfig(String name, boolean pushSearch, int costWeight, int estimateWeight) {
+        this(name, pushSearch, costWeight, estimateWeight, false, false);
+    }
+
+    private SolverConfig(String name, boolean pushSearch, int costWeight, int estimateWeight, boolean patternDatabase,
+                         boolean macros) {
+        this.name = name;
+        this.pushSearch = pushSearch;
+        this.costWeight = costWeight;
+        this.estimateWeight = estimateWeight;
+        this.patternDatabase = patternDatabase;
+        this.macros = macros;
+    }
+
+    public static SolverConfig greedy(boolean pushSearch) {
+        return new SolverConfig(searchName(pushSearch) + " greedy", pushSearch, 0, 1);
+    }
+
+    public static SolverConfig aStar(boolean pushSearch) {
+        return new SolverConfig(searchName(pushSearch) + " A*", pushSearch, 1, 1);
+    }
+
+    /**
+     * @param pushSearch - True to search over crate pushes, false to search over single player moves
+     * @param costWeight - Weight of the moves so far
+     * @param estimateWeight - Weight of the heuristic, the effective weight is estimateWeight / costWeight
+     * @return A weighted A* configuration.
+     */
+    public static SolverConfig weighted(boolean pushSearch, int costWeight, int estimateWeight) {
+        return new SolverConfig(searchName(pushSearch) + " WA*(" + estimateWeight + "/" + costWeight + ")",
+                pushSearch, costWeight, estimateWeight);
+    }
+
+    /**
+     * This method picks the configuration the solver uses when none is given.
+     * I simply found that if there is less than 2 boxes, it produces less moves when A* heuristic is used.
+     *
+     * @param level - Level to solve
+     * @return A* on levels with up to 2 goals, greedy otherwise, both over pushes.
+     */
+    public static SolverConfig forLevel(Level level) {
+        return level.getGoalCells().length <= 2 ? aStar(true) : greedy(true);
+    }
+
+    /**
+     * This method returns the same configuration with a pattern database, which costs a table per map but expands
+     * fewer states.
+     *
+     * @return A copy of this configuration that uses the pattern database of the level.
+     */
+    public SolverConfig withPatternDatabase() {
+        return new SolverConfig(name + " +PDB", pushSearch, costWeight, estimateWeight, true, macros);
+    }
+
+    /**
+     * This method returns the same configuration with tunnel and goal room macros. They only apply to push search,
+     * where they cut the depth and branching on maps with corridors, but a solution found with them is only the
+     * shortest among the ones that use them.
+     *
+     * @return A copy of this configuration that uses macro pushes.
+     */
+    public SolverConfig withMacros() {
+        return new SolverConfig(name + " +macros", pushSearch, costWeight, estimateWeight, patternDatabase, true);
+    }
+
+    private static String searchName(boolean pushSearch) {
+        return pushSearch ? "push" : "move";
+    }
+
+    public int score(int moves, int estimate) {
+        return costWeight * moves + estimateWeight * estimate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isPushSearch() {
+        return pushSearch;
+    }
+
+    public int getCostWeight() {
+        return costWeight;
+    }
+
+    public int getEstimateWeight() {
+        return estimateWeight;
+    }
+
+    /**
+     * This method tells whether the search finds shortest solutions, which is the case when the estimate does not
+     * weigh more than the moves. The heuristic never overestimates, so such a search is A* or a more cautious one.
+     * Move search is never admissible, its score adds the distance of the player to the closest crate, which can
+     * overestimate. Neither are macro pushes, a solution with them is only the shortest among the ones that use them.
+     * Nor is the pattern database: its estimate of a parent and of its children depends on where the player stands,
+     * so it is not known to be consistent, and the search never opens a closed state again for a shorter path.
+     *
+     * @return True if a solution found by this configuration is optimal.
+     */
+    public boolean isAdmissible() {
+        return pushSearch && !usesMacros() && !patternDatabase && costWeight > 0 && estimateWeight <= costWeight;
+    }
+
+    public boolean usesPatternDatabase() {
+        return patternDatabase;
+    }
+
+    public boolean usesMacros() {
+        return macros && pushSearch;
+    }
+
+    // Configurations are equal if they search the same way, whatever their names.
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SolverConfig)) {
+            return false;
+        }
+        SolverConfig other = (SolverConfig) o;
+        return pushSearch == other.pushSearch && costWeight == other.costWeight
+                && estimateWeight == other.estimateWeight && patternDatabase == other.patternDatabase
+                && macros == other.macros;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((costWeight * 31 + estimateWeight) * 8 + (pushSearch ? 4 : 0)) + (patternDatabase ? 2 : 0)
+                + (macros ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,390 @@
+package solver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A solver that stays resident and answers requests over a line protocol, so the start of the JVM, the warm-up of
+ * the JIT and the compilation of known maps are paid once instead of once per puzzle.
+ *
+ * A request is one line, an id and the board with its rows separated by |, for example
+ * "7 #####|#@$.#|#####". Floor can be written as a space, - or _. Every request gets one line back, starting with
+ * its id and followed by solved and the moves, unsolvable, timeout, or error and a message. Answers are written as
+ * the puzzles finish, so they can come out of order.
+ *
+ * Every request runs on its own virtual thread where the JVM has them, and on a pooled thread otherwise. Solving is
+ * bound by the CPU, so only as many requests as there are threads search at the same time, and the others wait for
+ * a permit. Requests are read only while fewer than maxPending are waiting or running, after that the reader stops
+ * until one finishes, which pushes back on the client through the pipe or socket. The compiled Level of every map
+ * is kept by the text of its walls and goals, so a request on a map that was seen before skips the compilation.
+ *
+ * A request that throws an Error such as OutOfMemoryError may have left the JVM in a bad state, so it closes the
+ * daemon: no more requests are read, and serve() and listen() throw the Error once the running requests are done.
+ */
+public class SolverDaemon implements Closeable {
+
+    public static final int DEFAULT_LEVEL_CACHE = 256;
+
+    private static final String BOARD_CHARACTERS = "#@+$*.-_ ";
+
+    private final long timeoutMillis;
+    // Search of every bot, null lets every bot pick one from its level.
+    private final SolverConfig config;
+
+    private final ExecutorService requests = newRequestExecutor();
+    // Permits to search, one per thread, and to be read, one per request that is waiting or running.
+    private final Semaphore searching;
+    private final Semaphore admission;
+    // Bots of the requests that are not searching, at most one per thread is ever created.
+    private final Queue<SokoBot> bots = new ConcurrentLinkedQueue<>();
+
+    // Compiled levels by the text of their walls and goals, least recently used first.
+    private final Map<String, Level> levels;
+    private final AtomicLong levelHits = new AtomicLong();
+    private final AtomicLong levelMisses = new AtomicLong();
+
+    // Socket of listen(), closed by close() so that the accept returns.
+    private volatile ServerSocket server;
+    // First Error a request threw, the daemon is closed after it.
+    private volatile Error failure;
+
+    /**
+     * @param threads - Number of requests that search at the same time
+     * @param maxPending - Number of requests that are read before the reader waits for one to finish
+     * @param timeoutMillis - Time limit of a request, 0 for none
+     * @param config - Search to run, null to pick one per level
+     */
+    public SolverDaemon(int threads, int maxPending, long timeoutMillis, SolverConfig config) {
+        if (threads < 1 || maxPending < threads) {
+            throw new IllegalArgumentException("The daemon needs a thread and at least as many pending requests");
+        }
+        this.searching = new Semaphore(threads, true);
+        this.admission = new Semaphore(maxPending);
+        this.timeoutMillis = timeoutMillis;
+        this.config = config;
+        this.levels = new LinkedHashMap<String, Level>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Level> eldest) {
+                return size() > DEFAULT_LEVEL_CACHE;
+            }
+        };
+    }
+
+    /**
+     * This method creates the executor of the requests, one virtual thread per request on Java 21 and later. It is
+     * looked up by reflection so that the daemon still builds and runs on older versions.
+     *
+     * @return An executor that starts every task right away.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            // The permits bound the searches either way, the pool only adds threads that wait for one.
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "solver-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * This method answers the requests of one client until its input ends, and returns once every answer is
+     * written.
+     *
+     * @param input - Request lines of the client
+     * @param output - Where the answer lines go, flushed after every line
+     */
+    public void serve(BufferedReader input, Writer output) throws IOException, InterruptedException {
+        // The reader is a party until the input ends, every request until its answer is written.
+        Phaser pending = new Phaser(1);
+        try {
+            String line;
+            while (failure == null && (line = input.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                admission.acquire();
+                pending.register();
+                String request = line;
+                try {
+                    requests.execute(() -> {
+                        try {
+                            String answer = handle(request);
+                            synchronized (output) {
+                                output.write(answer);
+                                output.write('\n');
+                                output.flush();
+                            }
+                        } catch (IOException ex) {
+                            // The client is gone, its other answers fail the same way.
+                            ex.printStackTrace();
+                        } catch (InterruptedException ex) {
+                            // The daemon is closing, the request gets no answer.
+                            Thread.currentThread().interrupt();
+                        } catch (Error error) {
+                            fail(error);
+                        } finally {
+                            admission.release();
+                            pending.arriveAndDeregister();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // The daemon was closed, the request gets no answer.
+                    admission.release();
+                    pending.arriveAndDeregister();
+                    break;
+                }
+            }
+        } finally {
+            pending.arriveAndAwaitAdvance();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * This method answers one request on the calling thread.
+     *
+     * @param line - Request line, an id and the board
+     * @return The answer line.
+     */
+    public String handle(String line) throws InterruptedException {
+        line = line.trim();
+        int space = line.indexOf(' ');
+        String id = space > 0 ? line.substring(0, space) : line;
+        if (space < 0) {
+            return id + " error missing board";
+        }
+        List<String> rows = new ArrayList<>(Arrays.asList(line.substring(space + 1).split("\\|")));
+        String invalid = validate(rows);
+        if (invalid != null) {
+            return id + " error " + invalid;
+        }
+        Puzzle puzzle = LevelReader.toPuzzle(0, id, rows);
+
+        searching.acquire();
+        SokoBot bot = bots.poll();
+        try {
+            if (bot == null) {
+                bot = new SokoBot(config);
+            }
+            bot.reset();
+            bot.setBudget(timeoutMillis > 0 ? SearchBudget.ofMillis(timeoutMillis) : null);
+            String moves = bot.search(level(puzzle), puzzle.getItemsData()).getMoves();
+            if (moves != null) {
+                return id + " solved " + moves;
+            }
+            return id + (bot.isBudgetExhausted() ? " timeout" : " unsolvable");
+        } catch (RuntimeException ex) {
+            return id + " error " + ex;
+        } finally {
+            if (bot != null) {
+                bots.add(bot);
+            }
+            searching.release();
+        }
+    }
+
+    /**
+     * This is a helper function that checks the rows of a board.
+     *
+     * @param rows - Rows of the board
+     * @return What is wrong with the board, or null if it can be solved.
+     */
+    private static String validate(List<String> rows) {
+        int players = 0;
+        for (String row : rows) {
+            for (int i = 0; i < row.length(); i++) {
+                char c = row.charAt(i);
+                if (BOARD_CHARACTERS.indexOf(c) < 0) {
+                    return "invalid board character " + c;
+                }
+                if (c == '@' || c == '+') {
+                    players++;
+                }
+            }
+        }
+        return players == 1 ? null : "board needs exactly one player";
+    }
+
+    /**
+     * This is a helper function that finds the compiled level of a map, compiling it on the first request. Two
+     * requests on a new map may both compile it, which costs less than holding a lock while one of them does.
+     *
+     * @param puzzle - Puzzle of the request
+     * @return The compiled level, shared by every request on the map.
+     */
+    private Level level(Puzzle puzzle) {
+        StringBuilder s = new StringBuilder().append(puzzle.getWidth()).append('x').append(puzzle.getHeight());
+        for (char[] row : puzzle.getMapData()) {
+            s.append('|').append(row);
+        }
+        String key = s.toString();
+
+        Level level;
+        synchronized (levels) {
+            level = levels.get(key);
+        }
+        if (level != null) {
+            levelHits.incrementAndGet();
+            return level;
+        }
+        levelMisses.incrementAndGet();
+        level = new Level(puzzle.getWidth(), puzzle.getHeight(), puzzle.getMapData());
+        synchronized (levels) {
+            levels.put(key, level);
+        }
+        return level;
+    }
+
+    /**
+     * This method accepts clients on a port of the loopback address until the daemon is closed or the thread is
+     * interrupted. Every client is served on its own thread.
+     *
+     * @param port - Port to listen on
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            this.server = server;
+            while (!requests.isShutdown() && !Thread.currentThread().isInterrupted()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException ex) {
+                    if (requests.isShutdown()) {
+                        break;
+                    }
+                    throw ex;
+                }
+                try {
+                    requests.execute(() -> {
+                        try (Socket client = socket;
+                             BufferedReader input = new BufferedReader(
+                                     new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                             Writer output = new BufferedWriter(
+                                     new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+                            serve(input, output);
+                        } catch (IOException ex) {
+                            ex.printStackTrace();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        } catch (Error error) {
+                            // Every client of a failed daemon gets the Error, listen() throws the first one.
+                            fail(error);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // The daemon was closed while the client connected.
+                    socket.close();
+                    break;
+                }
+            }
+        } finally {
+            server = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long getLevelHits() {
+        return levelHits.get();
+    }
+
+    public long getLevelMisses() {
+        return levelMisses.get();
+    }
+
+    @Override
+    public void close() {
+        requests.shutdownNow();
+        ServerSocket socket = server;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // The socket is of no more use either way.
+            }
+        }
+    }
+
+    /**
+     * This is a helper function that closes the daemon after a request threw an Error, which may have left the JVM
+     * in a bad state.
+     *
+     * @param error - Error the request threw
+     */
+    private void fail(Error error) {
+        if (failure == null) {
+            failure = error;
+        }
+        close();
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * Usage: SolverDaemon [--port n] [--threads n] [--pending n] [--timeout seconds]
+     * Without a port, the requests are read from the standard input and answered on the standard output.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int pending = -1;
+        long timeoutMillis = 60000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--pending":
+                    pending = Integer.parseInt(args[++i]);
+                    break;
+                case "--timeout":
+                    timeoutMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (SolverDaemon daemon = new SolverDaemon(threads, pending > 0 ? pending : threads * 4, timeoutMillis,
+                null)) {
+            if (port >= 0) {
+                daemon.listen(port);
+            } else {
+                daemon.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                        new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            }
+        }
+    }
+}
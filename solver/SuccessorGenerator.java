@@ -0,0 +1,668 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything one search needs to expand states on a level: move generation, deadlock checks and scoring.
+ *
+ * The Level is shared and only read, but the flood fill buffers, the freeze cache and the matching of the heuristic
+ * are scratch space, so every thread that expands states needs its own generator.
+ */
+public class SuccessorGenerator {
+
+    // Move of every direction as the one-character string stored in the states.
+    private static final String[] MOVE_STRINGS = {"u", "d", "l", "r"};
+
+    private final Level level;
+    private final ZobristTable zobrist;
+    private final int width;
+    private final SolverConfig config;
+    // In push search, a state is a crate configuration plus the area of the player and every successor is a push.
+    private final boolean pushSearch;
+    private final Reachability reachability;
+    private final Reachability childReachability;
+    private final FreezeDetector freezeDetector;
+    private final Heuristic heuristic;
+    // Macro pushes of the search, null if it does not use them. Solutions with macro pushes are written with
+    // transfers, which get their own instance if needed.
+    private final MacroMoves macros;
+    private MacroMoves transfers;
+    // PI-corral pruning of push search, null in move search.
+    private final CorralPruner corrals;
+
+    private int initialPlayerCell = -1;
+    // Crates of the node that is expanded from a NodeArena and of its child, reused by every expansion.
+    private short[] frontierCrates = new short[0];
+    private short[] childCrates = new short[0];
+    // States whose moves plus estimate reach this are left out, they cannot improve on a known solution.
+    private int costBound = Integer.MAX_VALUE;
+    // Counters of the search that uses the generator, null while they are not collected.
+    private SearchStats stats;
+
+    public SuccessorGenerator(Level level, SolverConfig config) {
+        this(level, config, config.usesPatternDatabase() ? PatternDatabase.forLevel(level) : null);
+    }
+
+    /**
+     * @param level - Compiled map of the puzzle
+     * @param config - Search to generate states for
+     * @param patterns - Pattern database of the level, used if the configuration asks for one. A database is only
+     *                   read, so the generators of several threads can share one.
+     */
+    public SuccessorGenerator(Level level, SolverConfig config, PatternDatabase patterns) {
+        this.level = level;
+        this.zobrist = level.getZobrist();
+        this.width = level.getWidth();
+        this.config = config;
+        this.pushSearch = config.isPushSearch();
+        this.reachability = new Reachability(level);
+        this.childReachability = new Reachability(level);
+        this.freezeDetector = new FreezeDetector(level);
+        this.heuristic = new Heuristic(level, config.usesPatternDatabase() ? patterns : null);
+        this.macros = config.usesMacros() ? new MacroMoves(level, freezeDetector) : null;
+        this.transfers = macros;
+        this.corrals = pushSearch ? new CorralPruner(level, freezeDetector) : null;
+    }
+
+    /**
+     * This method builds the state the search starts from.
+     *
+     * @param itemsData - Player and crate positions
+     * @return The initial state, or null if its crates can never all reach a goal within the cost bound.
+     */
+    public SokobanState initialState(char[][] itemsData) {
+        initialPlayerCell = -1;
+        List<Integer> initialCrateCells = new ArrayList<>();
+
+        // This initializes the player position and crate/box coordinates.
+        for (int i = 0; i < level.getHeight(); i++) {
+            for (int j = 0; j < width; j++) {
+                if (itemsData[i][j] == '@') {
+                    initialPlayerCell = i * width + j;
+                } else if (itemsData[i][j] == '$') {
+                    initialCrateCells.add(i * width + j);
+                }
+            }
+        }
+
+        // The cells are visited row by row, so the crate cells are already sorted.
+        short[] crateCells = new short[initialCrateCells.size()];
+        for (int i = 0; i < crateCells.length; i++) {
+            crateCells[i] = (short) (int) initialCrateCells.get(i);
+        }
+        // In push search the player is normalized to the lowest cell of the area it can walk to.
+        int playerCell = pushSearch ? reachability.fill(initialPlayerCell, crateCells) : initialPlayerCell;
+
+        int estimate = heuristic.estimate(crateCells);
+        if (estimate == Heuristic.INFINITE || estimate >= costBound) {
+            return null;
+        }
+        SokobanState initialState = new SokobanState(playerCell, crateCells, null, "", 0,
+                zobrist.hash(playerCell, crateCells));
+        initialState.setHeuristicScore(config.score(0, estimate));
+        return initialState;
+    }
+
+    // Cell of the player in the items the last initialState() was built from.
+    public int getInitialPlayerCell() {
+        return initialPlayerCell;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public SolverConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * This method bounds the length of the solutions the search looks for. The heuristic never overestimates, so a
+     * state whose moves plus estimate reach the bound cannot lead to a shorter solution and is not generated.
+     *
+     * @param costBound - Length of the best known solution in pushes or moves, Integer.MAX_VALUE for no bound
+     */
+    public void setCostBound(int costBound) {
+        this.costBound = costBound;
+    }
+
+    /**
+     * @param stats - Where the duplicates and prunes are counted, null to count nothing
+     */
+    public void setStats(SearchStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * This method generates the successors of a state, already scored.
+     *
+     * @param frontier - The current state of the game
+     * @param explored - States to leave out, may be null
+     * @return A List of possible pushes or moves, depending on the configuration.
+     */
+    public List<SokobanState> generate(SokobanState frontier, ClosedSet explored) {
+        // The heuristic solves the matching of the frontier once, its children are scored from it.
+        heuristic.prepare(frontier.getCrateCells());
+        return pushSearch ? generatePushes(frontier, explored) : generateMoves(frontier, explored);
+    }
+
+    /**
+     * This method generates the possible moves for the user.
+     * It involves valid move checking and tries to geenrate moves that will result into  a deadlock state and
+     *
+     * The cell in front of the player and the cell behind a pushed crate are read from the neighbour table of
+     * the level, so the four directions share one code path.
+     *
+     * @param frontier - The current state of the game
+     * @param explored - States to leave out, may be null
+     * @return A List of possible moves (At most size of 4)
+     */
+    List<SokobanState> generateMoves(SokobanState frontier, ClosedSet explored) {
+        List<SokobanState> generatedStates = new ArrayList<>(4);
+
+        for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+            if (!isValid(frontier, direction)) {
+                continue;
+            }
+
+            // The crate array is shared with the parent and only copied when a crate is pushed.
+            short[] newCrateCells = frontier.getCrateCells();
+            int newPlayerCell = level.neighbour(frontier.getPlayerCell(), direction);
+            long hash = frontier.getHash() ^ zobrist.playerKey(frontier.getPlayerCell()) ^ zobrist.playerKey(newPlayerCell);
+            int pushedCrateCell = -1;
+
+            // If there is a box infront of the user, move it forward (The error handling of this is already handled in isValid() method.
+            // The hash is updated incrementally, only the cells that changed are XORed in and out.
+            if (frontier.hasCrateAt(newPlayerCell)) {
+                pushedCrateCell = level.neighbour(newPlayerCell, direction);
+                newCrateCells = SokobanState.moveCrate(newCrateCells, newPlayerCell, pushedCrateCell);
+                hash ^= zobrist.crateKey(newPlayerCell) ^ zobrist.crateKey(pushedCrateCell);
+            }
+
+            SokobanState temporaryState = new SokobanState(newPlayerCell, newCrateCells, frontier,
+                    MOVE_STRINGS[direction], frontier.getMoves() + 1, hash);
+
+            // If this state already exist, then there is no need to add it to the generated state.
+            if (isExplored(temporaryState, explored)) {
+                continue;
+            }
+            if (setScore(temporaryState, pushedCrateCell < 0 ? -1 : newPlayerCell, pushedCrateCell)) {
+                generatedStates.add(temporaryState);
+            }
+        }
+        return generatedStates;
+    }
+
+    /**
+     * This method generates the possible pushes of a push search state.
+     * Every crate is tried in every direction where the player can walk behind it, and the player of the new state
+     * is normalized to the area it can reach after the push.
+     *
+     * @param frontier - The current state of the game
+     * @param explored - States to leave out, may be null
+     * @return A List of possible pushes
+     */
+    List<SokobanState> generatePushes(SokobanState frontier, ClosedSet explored) {
+        List<SokobanState> generatedStates = new ArrayList<>();
+        short[] crateCells = frontier.getCrateCells();
+        reachability.fill(frontier.getPlayerCell(), crateCells);
+        int corral = analyzeCorrals(crateCells, frontier.getPlayerCell());
+        if (corral == CorralPruner.DEADLOCK) {
+            return generatedStates;
+        }
+
+        for (short crateCell : crateCells) {
+            if (corral == CorralPruner.RESTRICTED && !corrals.isAllowed(crateCell)) {
+                pruned(SearchStats.PruneRule.CORRAL);
+                continue;
+            }
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                // The player has to be able to walk to the cell behind the crate.
+                if (!reachability.isReachable(level.neighbour(crateCell, Level.opposite(direction)))
+                        || !isPushValid(frontier, crateCell, direction)) {
+                    continue;
+                }
+
+                int pushedCrateCell = level.neighbour(crateCell, direction);
+                short[] newCrateCells = SokobanState.moveCrate(crateCells, crateCell, pushedCrateCell);
+                // After the push the player stands where the crate was.
+                int pusherCell = crateCell;
+                int pushes = 1;
+                if (macros != null) {
+                    pushes = macros.extend(newCrateCells, crateCell, pushedCrateCell, direction);
+                    pushedCrateCell = macros.getCrateCell();
+                    pusherCell = macros.getPlayerCell();
+                }
+                int newPlayerCell = childReachability.fill(pusherCell, newCrateCells);
+                long hash = frontier.getHash() ^ zobrist.playerKey(frontier.getPlayerCell()) ^ zobrist.playerKey(newPlayerCell)
+                        ^ zobrist.crateKey(crateCell) ^ zobrist.crateKey(pushedCrateCell);
+
+                SokobanState temporaryState = new SokobanState(newPlayerCell, newCrateCells, frontier,
+                        MOVE_STRINGS[direction], frontier.getMoves() + pushes, hash);
+
+                if (!isExplored(temporaryState, explored) && setScore(temporaryState, crateCell, pushedCrateCell)) {
+                    generatedStates.add(temporaryState);
+                }
+            }
+        }
+        return generatedStates;
+    }
+
+    /**
+     * This method generates the successors of a node straight into its arena, without a state object per child.
+     * A child is left out if its state was already expanded, or is queued with the same or fewer moves.
+     *
+     * @param arena - Arena of the search
+     * @param node - Handle of the node to expand
+     * @param scores - Receives the score of every child, at least 4 * (crates + 1) long
+     * @return The number of children, they are the last nodes of the arena.
+     */
+    public int generate(NodeArena arena, int node, int[] scores) {
+        int crateCount = arena.getCrateCount();
+        if (frontierCrates.length != crateCount) {
+            frontierCrates = new short[crateCount];
+            childCrates = new short[crateCount];
+        }
+        short[] crateCells = arena.copyCrates(node, frontierCrates);
+        int playerCell = arena.getPlayerCell(node);
+        long frontierHash = arena.getHash(node) ^ zobrist.playerKey(playerCell);
+        int count = 0;
+
+        heuristic.prepare(crateCells);
+        int corral = CorralPruner.NONE;
+        if (pushSearch) {
+            reachability.fill(playerCell, crateCells);
+            corral = analyzeCorrals(crateCells, playerCell);
+            if (corral == CorralPruner.DEADLOCK) {
+                return 0;
+            }
+        }
+        for (int i = 0; i < (pushSearch ? crateCount : 1); i++) {
+            if (corral == CorralPruner.RESTRICTED && !corrals.isAllowed(crateCells[i])) {
+                pruned(SearchStats.PruneRule.CORRAL);
+                continue;
+            }
+            for (int direction = Level.UP; direction <= Level.RIGHT; direction++) {
+                // In push search every crate the player can get behind is pushed, in move search the player steps.
+                int movedCrate;
+                int newPlayerCell;
+                if (pushSearch) {
+                    movedCrate = crateCells[i];
+                    if (!reachability.isReachable(level.neighbour(movedCrate, Level.opposite(direction)))
+                            || !isPushValid(crateCells, movedCrate, direction)) {
+                        continue;
+                    }
+                } else {
+                    newPlayerCell = level.neighbour(playerCell, direction);
+                    if (level.isWall(newPlayerCell)) {
+                        continue;
+                    }
+                    movedCrate = Arrays.binarySearch(crateCells, (short) newPlayerCell) >= 0 ? newPlayerCell : -1;
+                    if (movedCrate >= 0 && !isPushValid(crateCells, movedCrate, direction)) {
+                        continue;
+                    }
+                }
+
+                short[] newCrateCells = crateCells;
+                long hash = frontierHash;
+                int pushedCrateCell = -1;
+                int pusherCell = movedCrate;
+                int moves = arena.getCost(node) + 1;
+                if (movedCrate >= 0) {
+                    pushedCrateCell = level.neighbour(movedCrate, direction);
+                    newCrateCells = childCrates;
+                    System.arraycopy(crateCells, 0, newCrateCells, 0, crateCount);
+                    SokobanState.shiftCrate(newCrateCells, movedCrate, pushedCrateCell);
+                    if (macros != null) {
+                        moves += macros.extend(newCrateCells, movedCrate, pushedCrateCell, direction) - 1;
+                        pushedCrateCell = macros.getCrateCell();
+                        pusherCell = macros.getPlayerCell();
+                    }
+                    hash ^= zobrist.crateKey(movedCrate) ^ zobrist.crateKey(pushedCrateCell);
+                }
+                // After a push the player of a push state is normalized to the area it can reach.
+                newPlayerCell = pushSearch ? childReachability.fill(pusherCell, newCrateCells)
+                        : level.neighbour(playerCell, direction);
+                hash ^= zobrist.playerKey(newPlayerCell);
+
+                int existing = arena.find(hash, newPlayerCell, newCrateCells);
+                if (existing != NodeArena.NONE && (arena.isClosed(existing) || arena.getCost(existing) <= moves)) {
+                    if (stats != null) {
+                        stats.duplicate();
+                    }
+                    continue;
+                }
+                int score = score(moves, newPlayerCell, newCrateCells, movedCrate, pushedCrateCell);
+                if (score >= 0) {
+                    scores[count++] = score;
+                    // A child that did not push shares the crates of its parent.
+                    int sharedCrates = movedCrate < 0 ? node : NodeArena.NONE;
+                    arena.add(node, direction, moves, newPlayerCell, newCrateCells, sharedCrates, hash);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This is a helper function that looks for a PI-corral in a push search state, after the area of the player
+     * was filled by reachability.
+     *
+     * @param crateCells - Sorted cells of the crates
+     * @param playerCell - Cell of the player
+     * @return The result of CorralPruner.analyze(), a deadlock is counted.
+     */
+    private int analyzeCorrals(short[] crateCells, int playerCell) {
+        int corral = corrals.analyze(crateCells, playerCell, reachability);
+        if (corral == CorralPruner.DEADLOCK) {
+            pruned(SearchStats.PruneRule.CORRAL_DEADLOCK);
+        }
+        return corral;
+    }
+
+    private boolean isExplored(SokobanState state, ClosedSet explored) {
+        if (explored == null || !explored.contains(state)) {
+            return false;
+        }
+        if (stats != null) {
+            stats.duplicate();
+        }
+        return true;
+    }
+
+    /**
+     * This method checks if the state is in goal.
+     *
+     * @param state - Current state
+     * @return True if every goal has a box on it, false otherwise.
+     */
+    public boolean isGoal(SokobanState state) {
+        for (int goal : level.getGoalCells()) {
+            if (!state.hasCrateAt(goal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method checks if a node of an arena is in goal.
+     *
+     * @param arena - Arena of the node
+     * @param node - Handle of the node
+     * @return True if every goal has a box on it, false otherwise.
+     */
+    public boolean isGoal(NodeArena arena, int node) {
+        for (int goal : level.getGoalCells()) {
+            if (!arena.hasCrateAt(node, goal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method checks the possible moves of the user before cloning it on the generateMoves() method.
+     *
+     * It will return false if there is a wall infront of the player, or if the player pushes a box and isPushValid()
+     * rejects the push.
+     *
+     * @param state - The current state
+     * @param direction - The direction of movement Level.UP, DOWN, LEFT or RIGHT
+     * @return True if the movement is valid, false otherwise.
+     */
+    public boolean isValid(SokobanState state, int direction) {
+        int next = level.neighbour(state.getPlayerCell(), direction);
+
+        // If there is a wall infront of the player checker.
+        if (level.isWall(next)) {
+            return false;
+        }
+
+        if (!state.hasCrateAt(next)) {
+            return true;
+        }
+        return isPushValid(state, next, direction);
+    }
+
+    /**
+     * This method checks if a box can be pushed, without looking at where the player is.
+     *
+     * Currently, it will return false if any of these is true.
+     * 1. If there is a wall or a box infront of the box.
+     * 2. If the box is pushed on a dead tile, where it can never reach a goal again.
+     * 3. If the push freezes the box, together with the boxes around it, while one of them is not on a goal.
+     *
+     * @param state - The current state
+     * @param crateCell - Cell of the box that is pushed
+     * @param direction - The direction of the push Level.UP, DOWN, LEFT or RIGHT
+     * @return True if the push is valid, false otherwise.
+     */
+    public boolean isPushValid(SokobanState state, int crateCell, int direction) {
+        return isPushValid(state.getCrateCells(), crateCell, direction);
+    }
+
+    private boolean isPushValid(short[] crateCells, int crateCell, int direction) {
+        // The box needs an empty cell behind it that is not a dead tile.
+        int target = level.neighbour(crateCell, direction);
+        if (level.isWall(target) || Arrays.binarySearch(crateCells, (short) target) >= 0) {
+            return false;
+        }
+        if (level.isDead(target)) {
+            return pruned(SearchStats.PruneRule.DEAD_TILE);
+        }
+
+        return !freezeDetector.isDeadlock(crateCells, crateCell, target)
+                || pruned(SearchStats.PruneRule.FREEZE);
+    }
+
+    /**
+     * This method calculates the score of a generated state from the matching of its parent, see Heuristic.
+     *
+     * @param state - Generated state
+     * @param movedCrate - Cell of the box that was pushed, -1 if the player only walked
+     * @param pushedCrateCell - Cell where the box was pushed to
+     * @return False if the boxes can no longer all be matched to a goal or the state reaches the cost bound,
+     * true otherwise.
+     */
+    boolean setScore(SokobanState state, int movedCrate, int pushedCrateCell) {
+        int score = score(state.getMoves(), state.getPlayerCell(), state.getCrateCells(), movedCrate, pushedCrateCell);
+        if (score < 0) {
+            return false;
+        }
+        state.setHeuristicScore(score);
+        return true;
+    }
+
+    /**
+     * This is a helper function that scores a child from the matching of its parent.
+     *
+     * @param moves - Moves or pushes of the child
+     * @param playerCell - Cell of the player in the child
+     * @param crateCells - Sorted cells of the crates in the child
+     * @param movedCrate - Cell of the box that was pushed, -1 if the player only walked
+     * @param pushedCrateCell - Cell where the box was pushed to
+     * @return The score, or -1 if the child is pruned.
+     */
+    private int score(int moves, int playerCell, short[] crateCells, int movedCrate, int pushedCrateCell) {
+        int estimate = heuristic.estimateChild(movedCrate, pushedCrateCell);
+        if (estimate == Heuristic.INFINITE) {
+            pruned(SearchStats.PruneRule.UNMATCHABLE);
+            return -1;
+        }
+        if (moves + estimate >= costBound) {
+            pruned(SearchStats.PruneRule.COST_BOUND);
+            return -1;
+        }
+
+        int score = config.score(moves, estimate);
+        // The player position of a push state is only the corner of its area, so it is no use to attract it to the boxes.
+        if (!pushSearch && estimate > 0) {
+            score += distanceToCrates(playerCell, crateCells);
+        }
+        return score;
+    }
+
+    // Counts a pruned state, always false so that it can be returned by the checks.
+    private boolean pruned(SearchStats.PruneRule rule) {
+        if (stats != null) {
+            stats.pruned(rule);
+        }
+        return false;
+    }
+
+    /**
+     * This method calculates the manhattan distance of the player to the boxes.
+     * It forms an attraction to the box, so that the player does not wander anywhere in the map.
+     *
+     * @param state - Current State
+     * @return The minimum manhattan distance of the player to the box.
+     */
+    public int calculateManHDistPlayerToBoxes(SokobanState state) {
+        return distanceToCrates(state.getPlayerCell(), state.getCrateCells());
+    }
+
+    private int distanceToCrates(int playerCell, short[] crateCells) {
+        int minimum = Integer.MAX_VALUE; // Initialize with a high value to find the minimum distance.
+
+        for (short crateCell : crateCells) {
+            int manhattanDistance = Math.abs(crateCell % width - playerCell % width)
+                    + Math.abs(crateCell / width - playerCell / width);
+            minimum = Math.min(minimum, manhattanDistance);
+        }
+
+        return minimum;
+    }
+
+    /**
+     * This method returns the move sequence from the initial state to a state.
+     *
+     * @param state - The state where goal is reached
+     * @return Move sequence in String to arrive on the goal state.
+     */
+    public String getMoves(SokobanState state) {
+        if (pushSearch) {
+            return getPushMoves(state);
+        }
+        StringBuilder s = new StringBuilder();
+        for (; state.getParent() != null; state = state.getParent()) {
+            s.append(state.getPrevMove());
+        }
+        return s.reverse().toString();
+    }
+
+    /**
+     * This method returns the move sequence from the initial state to a node of an arena, read from its parents.
+     *
+     * @param arena - Arena of the search
+     * @param node - Handle of the node where goal is reached
+     * @return Move sequence in String to arrive on the goal node.
+     */
+    public String getMoves(NodeArena arena, int node) {
+        if (pushSearch) {
+            List<short[]> configurations = new ArrayList<>();
+            for (; node != NodeArena.NONE; node = arena.getParent(node)) {
+                configurations.add(arena.copyCrates(node, new short[arena.getCrateCount()]));
+            }
+            Collections.reverse(configurations);
+            return getPushMoves(initialPlayerCell, configurations);
+        }
+        char[] moves = new char[arena.getCost(node)];
+        for (; arena.getParent(node) != NodeArena.NONE; node = arena.getParent(node)) {
+            moves[arena.getCost(node) - 1] = Level.MOVES[arena.getDirection(node)];
+        }
+        return new String(moves);
+    }
+
+    /**
+     * This is a helper function that turns the pushes of a push search solution into player moves.
+     * The states only know the area of the player, so the walk before every push is rebuilt with a BFS.
+     *
+     * @param state - The state where goal is reached
+     * @return Move sequence in String to arrive on the goal state.
+     */
+    String getPushMoves(SokobanState state) {
+        List<short[]> configurations = new ArrayList<>();
+        for (; state != null; state = state.getParent()) {
+            configurations.add(state.getCrateCells());
+        }
+        Collections.reverse(configurations);
+        return getPushMoves(initialPlayerCell, configurations);
+    }
+
+    /**
+     * This method turns a sequence of crate configurations, each one push or macro push away from the last, into
+     * player moves.
+     *
+     * @param playerCell - Cell of the player in the first configuration
+     * @param configurations - Sorted crate cells of every configuration
+     * @return Move sequence in String that goes through all configurations.
+     * @throws IllegalStateException if two configurations are not one push or macro push apart
+     */
+    public String getPushMoves(int playerCell, List<short[]> configurations) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 1; i < configurations.size(); i++) {
+            short[] before = configurations.get(i - 1);
+            short[] after = configurations.get(i);
+            int from = movedCrate(before, after);
+            int to = movedCrate(after, before);
+
+            int direction = Level.UP;
+            while (direction <= Level.RIGHT && level.neighbour(from, direction) != to) {
+                direction++;
+            }
+            String walk = direction <= Level.RIGHT
+                    ? reachability.path(playerCell, level.neighbour(from, Level.opposite(direction)), before) : null;
+            if (walk != null) {
+                s.append(walk);
+                s.append(Level.MOVES[direction]);
+                playerCell = from;
+                continue;
+            }
+
+            // A macro push, the pushes of the crate are found again and replayed one by one.
+            if (transfers == null) {
+                transfers = new MacroMoves(level, freezeDetector);
+            }
+            short[] crateCells = before.clone();
+            int crateCell = from;
+            int[] pushes = transfers.transfer(before, from, to, playerCell);
+            if (pushes == null) {
+                throw new IllegalStateException("No pushes move the crate from " + from + " to " + to);
+            }
+            for (int push : pushes) {
+                // The walk is found on the crates after the pushes so far, a missing one means a corrupt solution.
+                walk = reachability.path(playerCell, level.neighbour(crateCell, Level.opposite(push)), crateCells);
+                if (walk == null) {
+                    throw new IllegalStateException("The player cannot get behind the crate on " + crateCell);
+                }
+                s.append(walk);
+                s.append(Level.MOVES[push]);
+                int next = level.neighbour(crateCell, push);
+                SokobanState.shiftCrate(crateCells, crateCell, next);
+                playerCell = crateCell;
+                crateCell = next;
+            }
+        }
+        return s.toString();
+    }
+
+    /**
+     * This is a helper function that finds the crate that is in one configuration but not in the other.
+     *
+     * @param crateCells - Sorted crate cells to search
+     * @param otherCrateCells - Sorted crate cells that differ by one crate
+     * @return The cell of the crate that is missing from otherCrateCells.
+     */
+    private static int movedCrate(short[] crateCells, short[] otherCrateCells) {
+        for (short crateCell : crateCells) {
+            if (Arrays.binarySearch(otherCrateCells, crateCell) < 0) {
+                return crateCell;
+            }
+        }
+        return -1;
+    }
+}
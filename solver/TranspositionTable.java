@@ -0,0 +1,113 @@
+package solver;
+
+/**
+ * Fixed-size table of the states an iteration of IDA* has already searched, keyed by their 64-bit Zobrist hash.
+ *
+ * Every entry holds the number of pushes the state was reached with and the iteration it belongs to. If a state is
+ * reached again in the same iteration with at least as many pushes, everything below it has been searched with a
+ * larger budget already, so the subtree can be skipped. Entries of older iterations count as empty, so nothing has
+ * to be cleared between iterations.
+ *
+ * The table never grows. It is split into buckets of two entries, and the replacement policy decides which entries
+ * stay when more states map to a bucket. Losing an entry only means a subtree may be searched twice, never a wrong
+ * result.
+ */
+public class TranspositionTable {
+
+    public enum ReplacementPolicy {
+        // The first entry of a bucket keeps the state closest to the root, it stands for the largest subtree.
+        // The second entry always takes the newest state, so deep transpositions are still caught.
+        DEPTH_PREFERRED,
+        // The two entries of a bucket keep the two newest states, they are the most likely to be hit again soon.
+        ALWAYS_REPLACE
+    }
+
+    private final long[] keys;
+    private final int[] depths;
+    // Iteration of every entry, 0 marks an empty slot.
+    private final int[] iterations;
+    private final int mask;
+    private final ReplacementPolicy policy;
+
+    /**
+     * @param entries - Number of entries, rounded up to a power of two of at least 2. Every entry takes 16 bytes
+     * @param policy - Entries to keep when more states map to the same bucket
+     */
+    public TranspositionTable(int entries, ReplacementPolicy policy) {
+        if (entries < 1 || entries > 1 << 30) {
+            throw new IllegalArgumentException("Transposition table size out of range: " + entries);
+        }
+        int capacity = Math.max(2, Integer.highestOneBit(entries));
+        if (capacity < entries) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.depths = new int[capacity];
+        this.iterations = new int[capacity];
+        // Mask of the first entry of a bucket, the second entry is the one after it.
+        this.mask = capacity - 2;
+        this.policy = policy;
+    }
+
+    /**
+     * This method checks if a state has already been searched in this iteration with a larger budget.
+     *
+     * @param key - Zobrist hash of the state
+     * @param depth - Pushes the state was reached with
+     * @param iteration - Current iteration, starting at 1
+     * @return True if the subtree of the state can be skipped, false otherwise.
+     */
+    public boolean isSearched(long key, int depth, int iteration) {
+        int slot = slot(key);
+        return isSearched(slot, key, depth, iteration) || isSearched(slot + 1, key, depth, iteration);
+    }
+
+    /**
+     * This method records that a state is searched in this iteration.
+     *
+     * @param key - Zobrist hash of the state
+     * @param depth - Pushes the state was reached with
+     * @param iteration - Current iteration, starting at 1
+     */
+    public void store(long key, int depth, int iteration) {
+        int slot = slot(key);
+        if (isFree(slot, key, iteration)) {
+            write(slot, key, depth, iteration);
+        } else if (isFree(slot + 1, key, iteration)) {
+            write(slot + 1, key, depth, iteration);
+        } else if (policy == ReplacementPolicy.DEPTH_PREFERRED && depths[slot] < depth) {
+            write(slot + 1, key, depth, iteration);
+        } else {
+            // The first entry moves to the second one, which drops the older or the deeper state.
+            write(slot + 1, keys[slot], depths[slot], iterations[slot]);
+            write(slot, key, depth, iteration);
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    private boolean isSearched(int slot, long key, int depth, int iteration) {
+        return iterations[slot] == iteration && keys[slot] == key && depths[slot] <= depth;
+    }
+
+    // An entry can be taken if it is empty, from an older iteration or holds the same state.
+    private boolean isFree(int slot, long key, int iteration) {
+        return iterations[slot] != iteration || keys[slot] == key;
+    }
+
+    private void write(int slot, long key, int depth, int iteration) {
+        keys[slot] = key;
+        depths[slot] = depth;
+        iterations[slot] = iteration;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
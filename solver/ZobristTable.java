@@ -0,0 +1,53 @@
+package solver;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random 64-bit keys for every cell of the map, one set for the player and one for the crates.
+ *
+ * The hash of a state is the XOR of the player key of its cell and the crate keys of every crate cell.
+ * Since XOR is its own inverse, moving the player or a crate only needs two XORs on the parent's hash.
+ */
+public class ZobristTable {
+
+    // Fixed seed so that hashes are reproducible between runs.
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final long[] playerKeys;
+    private final long[] crateKeys;
+
+    public ZobristTable(int width, int height) {
+        this.playerKeys = new long[width * height];
+        this.crateKeys = new long[width * height];
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < playerKeys.length; i++) {
+            playerKeys[i] = random.nextLong();
+            crateKeys[i] = random.nextLong();
+        }
+    }
+
+    public long playerKey(int cell) {
+        return playerKeys[cell];
+    }
+
+    public long crateKey(int cell) {
+        return crateKeys[cell];
+    }
+
+    /**
+     * This method computes the full hash of a state. It is only needed for the initial state,
+     * every other state is derived incrementally from its parent.
+     *
+     * @param playerCell - Cell of the player
+     * @param crateCells - Cells of the crates
+     * @return The Zobrist hash of the state.
+     */
+    public long hash(int playerCell, short[] crateCells) {
+        long hash = playerKey(playerCell);
+        for (short crate : crateCells) {
+            hash ^= crateKey(crate);
+        }
+        return hash;
+    }
+}